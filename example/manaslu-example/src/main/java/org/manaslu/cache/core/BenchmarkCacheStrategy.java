@@ -0,0 +1,153 @@
+package org.manaslu.cache.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 淘汰策略对比，Zipfian分布访问，未命中时放入缓存
+ * scanPercent 为顺序扫描访问的比例，模拟热点玩家与批量扫描混合
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BenchmarkCacheStrategy {
+
+    @Benchmark
+    @Threads(1)
+    public Object access1(CacheState state, HitCounter counter) {
+        return state.access(counter);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object access16(CacheState state, HitCounter counter) {
+        return state.access(counter);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object access64(CacheState state, HitCounter counter) {
+        return state.access(counter);
+    }
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+
+        @Param({"LRU", "TINY_LFU"})
+        String strategy;
+
+        @Param({"1000000"})
+        int keySpace;
+
+        @Param({"100000"})
+        int cacheSize;
+
+        /**
+         * Zipfian 偏斜系数
+         */
+        @Param({"0.99"})
+        double skew;
+
+        @Param({"0", "20"})
+        int scanPercent;
+
+        /**
+         * 预先生成的访问序列，长度为2的幂
+         */
+        int[] keys;
+
+        UserEntity[] entities;
+
+        CacheStrategy<Integer, UserEntity> cacheStrategy;
+
+        @Setup
+        public void setup() {
+            cacheStrategy = switch (strategy) {
+                case "TINY_LFU" -> new TinyLfuCacheStrategy<>(cacheSize, -1);
+                default -> new LRUCacheStrategy<>(cacheSize, -1);
+            };
+            entities = new UserEntity[keySpace];
+            for (int i = 0; i < keySpace; i++) {
+                var entity = new UserEntity();
+                entity.setId(i);
+                entities[i] = entity;
+            }
+            keys = generate(1 << 22);
+        }
+
+        private int[] generate(int size) {
+            // 累积分布，按排名二分查找
+            var cdf = new double[keySpace];
+            double sum = 0;
+            for (int i = 0; i < keySpace; i++) {
+                sum += 1 / Math.pow(i + 1, skew);
+                cdf[i] = sum;
+            }
+            var random = new Random(42);
+            var result = new int[size];
+            int scan = 0;
+            for (int i = 0; i < size; i++) {
+                if (random.nextInt(100) < scanPercent) {
+                    result[i] = scan;
+                    scan = (scan + 1) % keySpace;
+                    continue;
+                }
+                var target = random.nextDouble() * sum;
+                int low = 0;
+                int high = keySpace - 1;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (cdf[mid] < target) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                // 打散热点，避免热点集中在相邻的键上
+                result[i] = (int) ((low * 0x9E3779B97F4A7C15L >>> 1) % keySpace);
+            }
+            return result;
+        }
+
+        Object access(HitCounter counter) {
+            var id = keys[counter.next() & (keys.length - 1)];
+            var e = cacheStrategy.get(id);
+            if (e.isPresent()) {
+                counter.hits++;
+                return e.get();
+            }
+            counter.misses++;
+            var entity = entities[id];
+            cacheStrategy.put(entity);
+            return entity;
+        }
+    }
+
+    /**
+     * 命中统计，结果中以 hits / misses 输出
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HitCounter {
+
+        public long hits;
+        public long misses;
+
+        private int cursor;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+            cursor = new Random().nextInt();
+        }
+
+        int next() {
+            return cursor++;
+        }
+    }
+}
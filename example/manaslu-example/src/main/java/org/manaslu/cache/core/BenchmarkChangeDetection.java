@@ -0,0 +1,90 @@
+package org.manaslu.cache.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 修改写入相同的值后全部入库，测试变化检测节省的数据库访问
+ * 开启变化检测时第一次入库后不再访问数据库，dbRoundTrips应为0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BenchmarkChangeDetection {
+
+    @Benchmark
+    public int flushAll(FlushState state, Counters counters) {
+        for (var entity : state.entities) {
+            entity.update("Hello");
+        }
+        var flushed = state.dumpStrategy.flushAll();
+        counters.dbRoundTrips += state.dbOperator.roundTrips.sumThenReset();
+        var suppressed = state.dumpStrategy.stats().suppressedEntityCount();
+        counters.suppressed += suppressed - state.suppressed;
+        state.suppressed = suppressed;
+        return flushed;
+    }
+
+    /**
+     * 每次迭代的数据库访问次数和没有写入数据库的实体数量，随结果一起输出
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public long dbRoundTrips;
+
+        public long suppressed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            dbRoundTrips = 0;
+            suppressed = 0;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FlushState {
+
+        @Param({"false", "true"})
+        boolean changeDetection;
+
+        @Param({"10000"})
+        int keySpace;
+
+        SimulatedDbOperator dbOperator;
+
+        CountDumpStrategy<Integer, UserEntity> dumpStrategy;
+
+        UserEntity[] entities;
+
+        /**
+         * 上次记录时没有写入数据库的实体数量
+         */
+        long suppressed;
+
+        @Setup
+        public void setup() {
+            // 每批访问一次数据库耗时1ms
+            dbOperator = new SimulatedDbOperator(TimeUnit.MILLISECONDS.toNanos(1));
+            var entityTypeManager = new EntityTypeManager();
+            entityTypeManager.registerTypes(List.of(UserEntity.class));
+            Fingerprints<Integer, UserEntity> fingerprints = changeDetection
+                    ? new Fingerprints<>(entityTypeManager.getInfo(UserEntity.class)) : Fingerprints.disabled();
+            dumpStrategy = new CountDumpStrategy<>(Integer.MAX_VALUE, dbOperator, LongHashMap.<Integer>keyFunction(Integer.class), 500,
+                    Integer.MAX_VALUE, Journal.disabled(), fingerprints, Snapshots.disabled());
+            entities = new UserEntity[keySpace];
+            for (int i = 0; i < keySpace; i++) {
+                var raw = new UserEntity();
+                raw.setId(i);
+                var proxy = entityTypeManager.newEnhance(i, raw);
+                proxy.initialize(null, dumpStrategy);
+                entities[i] = proxy;
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.manaslu.cache.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多线程通过增强对象修改不同实体，测试延迟入库策略记录修改时的竞争
+ * 入库间隔和数量阈值足够大，不会自动触发入库；flushLatencyMs大于0时后台线程持续全部入库，数据库操作耗时flushLatencyMs
+ * 入库不持有修改需要的锁，两种情况下吞吐量应基本一致
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BenchmarkDirtyTracking {
+
+    @Benchmark
+    @Threads(1)
+    public void update1(DumpState state) {
+        state.update();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void update8(DumpState state) {
+        state.update();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void update64(DumpState state) {
+        state.update();
+    }
+
+    @State(Scope.Benchmark)
+    public static class DumpState {
+
+        @Param({"INTERVAL", "COUNTER"})
+        String strategy;
+
+        @Param({"100000"})
+        int keySpace;
+
+        @Param({"0", "10"})
+        int flushLatencyMs;
+
+        UserEntity[] entities;
+
+        ScheduledExecutorService scheduler;
+
+        volatile boolean running = true;
+
+        Thread flusher;
+
+        @Setup
+        public void setup() {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            var dbOperator = new SimulatedDbOperator(TimeUnit.MILLISECONDS.toNanos(flushLatencyMs));
+            var keyFunction = LongHashMap.<Integer>keyFunction(Integer.class);
+            DelayDumpStrategy<Integer, UserEntity> dumpStrategy = switch (strategy) {
+                case "COUNTER" -> new CountDumpStrategy<>(Integer.MAX_VALUE, dbOperator, keyFunction, 500, Integer.MAX_VALUE, Journal.disabled(),
+                        Fingerprints.disabled(), Snapshots.disabled());
+                default -> new IntervalDumpStrategy<>(TimeUnit.HOURS.toMillis(1), dbOperator, keyFunction, 500, Integer.MAX_VALUE, Journal.disabled(),
+                        Fingerprints.disabled(), Snapshots.disabled(), scheduler);
+            };
+            var entityTypeManager = new EntityTypeManager();
+            entityTypeManager.registerTypes(List.of(UserEntity.class));
+            entities = new UserEntity[keySpace];
+            for (int i = 0; i < keySpace; i++) {
+                var raw = new UserEntity();
+                raw.setId(i);
+                var proxy = entityTypeManager.newEnhance(i, raw);
+                proxy.initialize(null, dumpStrategy);
+                entities[i] = proxy;
+            }
+            if (flushLatencyMs > 0) {
+                flusher = new Thread(() -> {
+                    while (running) {
+                        dumpStrategy.flushAll();
+                    }
+                });
+                flusher.setDaemon(true);
+                flusher.start();
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws InterruptedException {
+            running = false;
+            if (flusher != null) {
+                flusher.join();
+            }
+            scheduler.shutdownNow();
+        }
+
+        void update() {
+            entities[ThreadLocalRandom.current().nextInt(keySpace)].update("Hello");
+        }
+    }
+}
@@ -4,9 +4,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.openjdk.jmh.annotations.*;
 
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * 增强对象修改的开销
+ * 使用 -prof gc 运行，proxy和proxyDirty的gc.alloc.rate.norm应为0，即修改和合并未入库更新都不分配对象
+ */
 @OutputTimeUnit(TimeUnit.MILLISECONDS)
 @Warmup(iterations = 5, time = 2)
 @Measurement(iterations = 5, time = 10)
@@ -14,10 +17,13 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class BenchmarkEnhance {
 
+    private static final long NAME_MASK = FieldMask.of(UserEntity.class, "name");
+
     @Benchmark
+    @SuppressWarnings({"unchecked", "rawtypes"})
     public void raw(Wrapper state) {
         state.raw.update("Hello");
-        state.raw.dumpStrategy.update(new UpdateInfo(state.raw, Set.of("name")));
+        ((DumpStrategy) state.raw.dumpStrategy).update(state.raw, NAME_MASK);
     }
 
     @Benchmark
@@ -25,6 +31,14 @@ public class BenchmarkEnhance {
         state.proxy.update("Hello");
     }
 
+    /**
+     * 实体已有未入库的更新，修改只合并掩码
+     */
+    @Benchmark
+    public void proxyDirty(DirtyWrapper state) {
+        state.proxy.update("Hello");
+    }
+
     @State(Scope.Benchmark)
     public static class Wrapper {
         UserEntity raw;
@@ -41,4 +55,22 @@ public class BenchmarkEnhance {
             proxy.initialize(null, dumpStrategy);
         }
     }
+
+    @State(Scope.Benchmark)
+    public static class DirtyWrapper {
+        UserEntity proxy;
+
+        @Setup
+        public void setup() {
+            // 数量阈值足够大，测试期间不触发入库
+            var dumpStrategy = new CountDumpStrategy<>(Integer.MAX_VALUE, new SimulatedDbOperator(0), LongHashMap.<Integer>keyFunction(Integer.class),
+                    500, Integer.MAX_VALUE, Journal.disabled(), Fingerprints.disabled(), Snapshots.disabled());
+            var raw = new UserEntity();
+            var entityTypeManager = new EntityTypeManager();
+            entityTypeManager.registerTypes(List.of(UserEntity.class));
+            proxy = entityTypeManager.newEnhance(1, raw);
+            proxy.initialize(null, dumpStrategy);
+            proxy.update("Hello");
+        }
+    }
 }
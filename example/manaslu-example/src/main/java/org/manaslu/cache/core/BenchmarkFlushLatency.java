@@ -0,0 +1,82 @@
+package org.manaslu.cache.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台线程持续全部入库，数据库操作耗时flushLatencyMs，测试入库进行中修改和查询是否有未入库修改的延迟分布
+ * 主键空间小于一批入库的数量，修改的实体大多正在入库；入库不持有修改需要的锁，延迟应与flushLatencyMs无关
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class BenchmarkFlushLatency {
+
+    @Benchmark
+    public void update(FlushState state) {
+        state.entity().update("Hello");
+    }
+
+    @Benchmark
+    public boolean isDirty(FlushState state) {
+        return state.dumpStrategy.isDirty(ThreadLocalRandom.current().nextInt(state.keySpace));
+    }
+
+    @State(Scope.Benchmark)
+    public static class FlushState {
+
+        @Param({"0", "10"})
+        int flushLatencyMs;
+
+        @Param({"100"})
+        int keySpace;
+
+        CountDumpStrategy<Integer, UserEntity> dumpStrategy;
+
+        UserEntity[] entities;
+
+        volatile boolean running = true;
+
+        Thread flusher;
+
+        @Setup
+        public void setup() {
+            var dbOperator = new SimulatedDbOperator(TimeUnit.MILLISECONDS.toNanos(flushLatencyMs));
+            dumpStrategy = new CountDumpStrategy<>(Integer.MAX_VALUE, dbOperator, LongHashMap.<Integer>keyFunction(Integer.class), 500,
+                    Integer.MAX_VALUE, Journal.disabled(), Fingerprints.disabled(), Snapshots.disabled());
+            var entityTypeManager = new EntityTypeManager();
+            entityTypeManager.registerTypes(List.of(UserEntity.class));
+            entities = new UserEntity[keySpace];
+            for (int i = 0; i < keySpace; i++) {
+                var raw = new UserEntity();
+                raw.setId(i);
+                var proxy = entityTypeManager.newEnhance(i, raw);
+                proxy.initialize(null, dumpStrategy);
+                entities[i] = proxy;
+            }
+            flusher = new Thread(() -> {
+                while (running) {
+                    dumpStrategy.flushAll();
+                }
+            });
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+
+        @TearDown
+        public void tearDown() throws InterruptedException {
+            running = false;
+            flusher.join();
+        }
+
+        UserEntity entity() {
+            return entities[ThreadLocalRandom.current().nextInt(keySpace)];
+        }
+    }
+}
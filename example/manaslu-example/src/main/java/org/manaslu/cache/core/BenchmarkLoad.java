@@ -0,0 +1,68 @@
+package org.manaslu.cache.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并发加载压测，缓存容量小于ID范围，保证一定比例的未命中
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BenchmarkLoad {
+
+    @Benchmark
+    @Threads(1)
+    public Object load1(RepositoryState state) {
+        return state.load();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object load8(RepositoryState state) {
+        return state.load();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object load64(RepositoryState state) {
+        return state.load();
+    }
+
+    @State(Scope.Benchmark)
+    public static class RepositoryState {
+
+        /**
+         * 数据库延迟(ns)
+         */
+        @Param({"100000"})
+        long latencyNanos;
+
+        @Param({"4096"})
+        int keySpace;
+
+        @Param({"1024"})
+        int cacheSize;
+
+        Repository<Integer, UserEntity> repository;
+
+        @Setup
+        public void setup() {
+            var entityTypeManager = new EntityTypeManager();
+            entityTypeManager.registerTypes(List.of(UserEntity.class));
+            var dbOperator = new SimulatedDbOperator(latencyNanos);
+            repository = new RepositoryImpl<>(new LRUCacheStrategy<>(cacheSize, -1),
+                    new ImmediateDumpStrategy<>(dbOperator), new EntityEnhanceCreator(entityTypeManager),
+                    MissingIdFilter.disabled(), EntityIndexes.empty(), ColdTier.disabled(), new RepositoryMetrics(), RepositoryOptions.defaults("benchmark"));
+        }
+
+        Object load() {
+            return repository.load(ThreadLocalRandom.current().nextInt(keySpace));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.manaslu.cache.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量加载与逐个加载对比，每次调用前清空缓存，保证全部未命中
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BenchmarkLoadAll {
+
+    @Benchmark
+    public Object sequentialLoad(RepositoryState state) {
+        var list = new ArrayList<UserEntity>(state.ids.size());
+        for (Integer id : state.ids) {
+            state.repository.load(id).ifPresent(list::add);
+        }
+        return list;
+    }
+
+    @Benchmark
+    public Object loadAll(RepositoryState state) {
+        return state.repository.loadAll(state.ids);
+    }
+
+    @State(Scope.Thread)
+    public static class RepositoryState {
+
+        /**
+         * 数据库延迟(ns)
+         */
+        @Param({"200000"})
+        long latencyNanos;
+
+        /**
+         * 每次加载的数量
+         */
+        @Param({"10", "50", "200"})
+        int size;
+
+        LRUCacheStrategy<Integer, UserEntity> cacheStrategy;
+        Repository<Integer, UserEntity> repository;
+        List<Integer> ids;
+
+        @Setup
+        public void setup() {
+            var entityTypeManager = new EntityTypeManager();
+            entityTypeManager.registerTypes(List.of(UserEntity.class));
+            cacheStrategy = new LRUCacheStrategy<>(Integer.MAX_VALUE, -1);
+            repository = new RepositoryImpl<>(cacheStrategy, new ImmediateDumpStrategy<>(new SimulatedDbOperator(latencyNanos)),
+                    new EntityEnhanceCreator(entityTypeManager), MissingIdFilter.disabled(), EntityIndexes.empty(), ColdTier.disabled(),
+                    new RepositoryMetrics(), RepositoryOptions.defaults("benchmark"));
+            ids = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                ids.add(i);
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void clear() {
+            ids.forEach(cacheStrategy::delete);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.manaslu.cache.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 指标记录的开销，命中计数和耗时记录每次应在几纳秒内
+ * baseline 为空操作，结果减去baseline即为记录开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class BenchmarkMetrics {
+
+    @Benchmark
+    @Threads(1)
+    public long baseline1(MetricsState state) {
+        return state.nanos;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void hit1(MetricsState state) {
+        state.metrics.hit();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void hit16(MetricsState state) {
+        state.metrics.hit();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void record1(MetricsState state) {
+        state.metrics.updateRecorder().record(state.nanos);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void record16(MetricsState state) {
+        state.metrics.updateRecorder().record(state.nanos);
+    }
+
+    @State(Scope.Benchmark)
+    public static class MetricsState {
+
+        /**
+         * 记录的耗时(ns)
+         */
+        @Param({"150000"})
+        long nanos;
+
+        RepositoryMetrics metrics;
+
+        @Setup
+        public void setup() {
+            metrics = new RepositoryMetrics();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.manaslu.cache.core;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 模拟数据库，用于压测
+ */
+public class SimulatedDbOperator implements DbOperator<Integer, UserEntity> {
+
+    /**
+     * 每次访问数据库的延迟(ns)
+     */
+    private final long latencyNanos;
+
+    private final AtomicInteger idGenerator = new AtomicInteger();
+
+    /**
+     * 访问数据库次数
+     */
+    final LongAdder roundTrips = new LongAdder();
+
+    public SimulatedDbOperator(long latencyNanos) {
+        this.latencyNanos = latencyNanos;
+    }
+
+    void roundTrip() {
+        roundTrips.increment();
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    @Override
+    public Optional<UserEntity> select(Integer id) {
+        roundTrip();
+        var entity = new UserEntity();
+        entity.setId(id);
+        entity.setName("user" + id);
+        return Optional.of(entity);
+    }
+
+    @Override
+    public Map<Integer, UserEntity> selectAll(@Nonnull Collection<Integer> ids) {
+        roundTrip();
+        var result = new HashMap<Integer, UserEntity>(ids.size());
+        for (Integer id : ids) {
+            var entity = new UserEntity();
+            entity.setId(id);
+            entity.setName("user" + id);
+            result.put(id, entity);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supportsScan() {
+        return true;
+    }
+
+    @Override
+    public void forEachId(@Nonnull Consumer<Integer> consumer) {
+        roundTrip();
+        for (int i = 1; i <= idGenerator.get(); i++) {
+            consumer.accept(i);
+        }
+    }
+
+    @Override
+    public void scan(@Nonnull Consumer<UserEntity> consumer) {
+        roundTrip();
+        for (int i = 1; i <= idGenerator.get(); i++) {
+            var entity = new UserEntity();
+            entity.setId(i);
+            entity.setName("user" + i);
+            consumer.accept(entity);
+        }
+    }
+
+    @Override
+    public Optional<Integer> insert(@Nonnull UserEntity entity) {
+        roundTrip();
+        return Optional.of(idGenerator.incrementAndGet());
+    }
+
+    @Override
+    public List<Optional<Integer>> insertAll(@Nonnull List<UserEntity> entities) {
+        roundTrip();
+        var ids = new ArrayList<Optional<Integer>>(entities.size());
+        for (int i = 0; i < entities.size(); i++) {
+            ids.add(Optional.of(idGenerator.incrementAndGet()));
+        }
+        return ids;
+    }
+
+    @Override
+    public void update(@Nonnull UpdateInfo<Integer, UserEntity> entity) {
+        roundTrip();
+    }
+
+    @Override
+    public void updateAll(@Nonnull List<UpdateInfo<Integer, UserEntity>> infos) {
+        roundTrip();
+    }
+
+    @Override
+    public void delete(Integer id) {
+        roundTrip();
+    }
+
+    @Override
+    public void deleteAll(@Nonnull Collection<Integer> ids) {
+        roundTrip();
+    }
+}
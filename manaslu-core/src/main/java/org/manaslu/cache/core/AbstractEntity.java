@@ -1,9 +1,42 @@
 package org.manaslu.cache.core;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 public abstract class AbstractEntity<ID extends Comparable<ID>> {
 
+    private static final VarHandle MUTATION;
+    /**
+     * 后台刷新标记，占用正在进行的修改数量的最高位
+     */
+    private static final long REFRESHING = 1L << 31;
+
+    static {
+        try {
+            MUTATION = MethodHandles.lookup().findVarHandle(AbstractEntity.class, "mutation", long.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
     protected CacheStrategy<?, ? extends AbstractEntity<?>> cacheStrategy;
     protected DumpStrategy<?, ? extends AbstractEntity<?>> dumpStrategy;
+    protected EntityIndexes<?, ? extends AbstractEntity<?>> indexes;
+    /**
+     * 按大小淘汰时估算的权重(字节)，0 代表未计算
+     */
+    volatile int cacheWeight;
+    /**
+     * 开启变化检测时上次入库各字段的指纹，null 代表还没有入库
+     *
+     * @see Fingerprints
+     */
+    volatile long[] fingerprints;
+    /**
+     * 修改计数，高32位是完成的修改次数，低32位是正在进行的修改数量
+     * 入库快照复制前后计数相同且没有正在进行的修改时，复制的是一致的状态
+     */
+    private volatile long mutation;
 
     /**
      * 主键
@@ -15,6 +48,12 @@ public abstract class AbstractEntity<ID extends Comparable<ID>> {
         this.dumpStrategy = dumpStrategy;
     }
 
+    public void initialize(CacheStrategy<?, ? extends AbstractEntity<?>> cacheStrategy, DumpStrategy<?, ? extends AbstractEntity<?>> dumpStrategy,
+                           EntityIndexes<?, ? extends AbstractEntity<?>> indexes) {
+        initialize(cacheStrategy, dumpStrategy);
+        this.indexes = indexes;
+    }
+
     public DumpStrategy<?, ? extends AbstractEntity<?>> dumpStrategy() {
         return dumpStrategy;
     }
@@ -23,6 +62,47 @@ public abstract class AbstractEntity<ID extends Comparable<ID>> {
         return this;
     }
 
+    /**
+     * 增强类在修改前调用，后台刷新期间等待刷新完成
+     */
+    public final void beginMutation() {
+        var prev = (long) MUTATION.getAndAdd(this, 1L);
+        if ((prev & REFRESHING) != 0) {
+            while ((mutation & REFRESHING) != 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * 增强类在修改后调用
+     */
+    public final void endMutation() {
+        MUTATION.getAndAdd(this, (1L << 32) - 1);
+    }
+
+    /**
+     * 开始后台刷新，只有修改计数仍是stamp且没有正在进行的修改时成功
+     * 成功后开始的修改等待刷新完成，入库快照也等待刷新完成
+     */
+    final boolean tryBeginRefresh(long stamp) {
+        return (int) stamp == 0 && MUTATION.compareAndSet(this, stamp, stamp | REFRESHING);
+    }
+
+    /**
+     * 结束后台刷新，计为一次完成的修改
+     */
+    final void endRefresh() {
+        MUTATION.getAndAdd(this, (1L << 32) - REFRESHING);
+    }
+
+    /**
+     * 当前修改计数
+     */
+    final long mutationStamp() {
+        return (long) MUTATION.getAcquire(this);
+    }
+
     /**
      * 构造完成后
      */
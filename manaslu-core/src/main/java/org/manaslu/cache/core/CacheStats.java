@@ -0,0 +1,15 @@
+package org.manaslu.cache.core;
+
+/**
+ * 缓存统计
+ *
+ * @param size             当前数量
+ * @param evictionCount    淘汰次数(超时或超出容量)
+ * @param refreshCount     后台刷新次数
+ * @param refreshSkipCount 因存在未入库修改等原因跳过的刷新次数
+ * @param weightBytes      估算的占用字节数，未按大小淘汰时为0
+ */
+public record CacheStats(long size, long evictionCount, long refreshCount, long refreshSkipCount, long weightBytes) {
+
+    static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0);
+}
@@ -1,19 +1,29 @@
 package org.manaslu.cache.core;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
 
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 
 /**
  * 缓存策略
  */
-public sealed interface CacheStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> permits LRUCacheStrategy, NoCacheStrategy {
+public sealed interface CacheStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> permits LRUCacheStrategy, RefreshAheadCacheStrategy, TinyLfuCacheStrategy, PersistCacheStrategy, LongPersistCacheStrategy, NoCacheStrategy {
 
     /**
      * 添加或者更新数据
@@ -22,18 +32,37 @@ public sealed interface CacheStrategy<ID extends Comparable<ID>, Entity extends
      */
     void put(Entity entity);
 
+    /**
+     * 不存在时才添加
+     *
+     * @param entity 数据
+     * @return 是否添加成功
+     */
+    boolean putIfAbsent(Entity entity);
+
     /**
      * 删除缓存
      */
     void delete(ID id);
 
     /**
-     * 查看缓存数据
+     * 查看缓存数据，会复制所有数据
      *
      * @return
      */
     List<Entity> list();
 
+    /**
+     * 遍历缓存数据，不复制
+     * 弱一致性: 遍历期间的新增和删除可能可见也可能不可见，每个数据最多出现一次，不会抛出ConcurrentModificationException
+     */
+    void forEach(Consumer<? super Entity> action);
+
+    /**
+     * 缓存数据的分割迭代器，不复制，一致性同forEach
+     */
+    Spliterator<Entity> spliterator();
+
     /**
      * 查询数据
      *
@@ -46,29 +75,96 @@ public sealed interface CacheStrategy<ID extends Comparable<ID>, Entity extends
      * 实体卸载是回调
      */
     void addRemoveCallback(Consumer<Entity> supplier);
+
+    /**
+     * 实体放入缓存后回调
+     */
+    void addPutCallback(Consumer<Entity> consumer);
+
+    /**
+     * 实体被相同主键的另一个对象替换后回调，替换不执行卸载回调
+     */
+    void addReplaceCallback(Consumer<Entity> consumer);
+
+    /**
+     * 设置后台刷新方法，不支持刷新的策略忽略
+     *
+     * @param refresher 把数据库中的数据刷新到缓存中的对象，对象引用不变，返回false代表跳过本次刷新
+     * @param executor  执行刷新的线程池
+     */
+    void setRefresher(Predicate<Entity> refresher, Executor executor);
+
+    /**
+     * 重新估算权重，按大小淘汰时在入库后调用，数据不在缓存中或不按大小淘汰时忽略
+     */
+    void reweigh(ID id);
+
+    /**
+     * 统计信息
+     */
+    CacheStats stats();
 }
 
 /**
  * 采用lru淘汰策略
  */
-sealed class LRUCacheStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> implements CacheStrategy<ID, Entity> permits PersistCacheStrategy {
+final class LRUCacheStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> implements CacheStrategy<ID, Entity> {
 
     private final Cache<ID, Entity> cache;
+    @Nullable
+    private final EntityWeigher<Entity> weigher;
 
     private final LinkedBlockingQueue<Consumer<Entity>> callbacks = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Consumer<Entity>> putCallbacks = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Consumer<Entity>> replaceCallbacks = new LinkedBlockingQueue<>();
+
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder weightBytes = new LongAdder();
 
     /**
      * @param maxSize        最大数量
      * @param maxExpiredTime 最大超时时间(ms), -1 代表永久
      */
     LRUCacheStrategy(int maxSize, long maxExpiredTime) {
-        var builder = CacheBuilder.newBuilder().maximumSize(maxSize);
+        this(maxSize, maxExpiredTime, -1, null);
+    }
+
+    /**
+     * @param maxSize        最大数量
+     * @param maxExpiredTime 最大超时时间(ms), -1 代表永久
+     * @param maxWeightBytes 最大字节数，大于0时按大小淘汰，忽略最大数量
+     * @param weigher        估算大小
+     */
+    LRUCacheStrategy(int maxSize, long maxExpiredTime, long maxWeightBytes, @Nullable EntityWeigher<Entity> weigher) {
+        var builder = CacheBuilder.newBuilder();
+        var weighted = maxWeightBytes > 0 && weigher != null;
+        if (weighted) {
+            builder.maximumWeight(maxWeightBytes).weigher((ID id, Entity entity) -> {
+                var weight = weigher.weigh(entity);
+                weightBytes.add(weight);
+                return weight;
+            });
+        } else {
+            builder.maximumSize(maxSize);
+        }
         if (maxExpiredTime > 0) {
             builder.expireAfterAccess(maxExpiredTime, TimeUnit.MILLISECONDS);
         }
+        this.weigher = weighted ? weigher : null;
         this.cache = builder.<ID, Entity>removalListener(notification -> {
+                    if (notification.wasEvicted()) {
+                        evictionCount.increment();
+                    }
                     var value = notification.getValue();
-                    callbacks.forEach(e -> e.accept(value));
+                    // 重新估算权重时替换为同一个对象，不是卸载
+                    var replaced = notification.getCause() == RemovalCause.REPLACED;
+                    if (replaced && cached(notification.getKey(), value)) {
+                        return;
+                    }
+                    if (weighted) {
+                        weightBytes.add(-value.cacheWeight);
+                    }
+                    (replaced ? replaceCallbacks : callbacks).forEach(e -> e.accept(value));
                 })
                 .build();
     }
@@ -76,6 +172,16 @@ sealed class LRUCacheStrategy<ID extends Comparable<ID>, Entity extends Abstract
     @Override
     public void put(Entity entity) {
         cache.put(entity.id(), entity);
+        putCallbacks.forEach(e -> e.accept(entity));
+    }
+
+    @Override
+    public boolean putIfAbsent(Entity entity) {
+        if (cache.asMap().putIfAbsent(entity.id(), entity) == null) {
+            putCallbacks.forEach(e -> e.accept(entity));
+            return true;
+        }
+        return false;
     }
 
     @Override
@@ -91,6 +197,397 @@ sealed class LRUCacheStrategy<ID extends Comparable<ID>, Entity extends Abstract
                 .toList();
     }
 
+    @Override
+    public void forEach(Consumer<? super Entity> action) {
+        cache.asMap().values().forEach(action);
+    }
+
+    @Override
+    public Spliterator<Entity> spliterator() {
+        return cache.asMap().values().spliterator();
+    }
+
+    @Override
+    public Optional<Entity> get(ID id) {
+        return Optional.ofNullable(cache.getIfPresent(id));
+    }
+
+    @Override
+    public void addRemoveCallback(Consumer<Entity> consumer) {
+        callbacks.add(consumer);
+    }
+
+    @Override
+    public void addPutCallback(Consumer<Entity> consumer) {
+        putCallbacks.add(consumer);
+    }
+
+    @Override
+    public void addReplaceCallback(Consumer<Entity> consumer) {
+        replaceCallbacks.add(consumer);
+    }
+
+    @Override
+    public void setRefresher(Predicate<Entity> refresher, Executor executor) {
+
+    }
+
+    @Override
+    public void reweigh(ID id) {
+        if (weigher == null) {
+            return;
+        }
+        var entity = cache.asMap().get(id);
+        if (entity == null) {
+            return;
+        }
+        var old = weigher.reweigh(entity);
+        // 替换为同一个对象，缓存重新计算权重
+        if (old != entity.cacheWeight && cache.asMap().replace(id, entity, entity)) {
+            weightBytes.add(-old);
+        }
+    }
+
+    /**
+     * 是否仍是缓存中的对象
+     */
+    private boolean cached(ID id, Entity entity) {
+        return cache.asMap().get(id) == entity;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(cache.size(), evictionCount.sum(), 0, 0, weightBytes.sum());
+    }
+}
+
+/**
+ * 采用lru淘汰策略，按访问时间超时
+ * 加载或上次刷新后超过刷新时间被访问的数据在后台从数据库刷新，刷新直接修改缓存中的对象，业务持有的引用仍然有效
+ */
+@Slf4j
+final class RefreshAheadCacheStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> implements CacheStrategy<ID, Entity> {
+
+    private final Cache<ID, Node<Entity>> cache;
+    @Nullable
+    private final EntityWeigher<Entity> weigher;
+
+    private final LinkedBlockingQueue<Consumer<Entity>> callbacks = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Consumer<Entity>> putCallbacks = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Consumer<Entity>> replaceCallbacks = new LinkedBlockingQueue<>();
+
+    /**
+     * 加载或上次刷新多久后访问触发刷新(ns)
+     */
+    private final long refreshAfterNanos;
+
+    private volatile Predicate<Entity> refresher;
+    private volatile Executor executor;
+
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder refreshCount = new LongAdder();
+    private final LongAdder refreshSkipCount = new LongAdder();
+    private final LongAdder weightBytes = new LongAdder();
+
+    /**
+     * @param maxSize          最大数量
+     * @param maxExpiredTime   访问后的超时时间(ms)
+     * @param refreshAheadTime 加载超过maxExpiredTime - refreshAheadTime后访问触发刷新(ms)
+     * @param maxWeightBytes   最大字节数，大于0时按大小淘汰，忽略最大数量
+     * @param weigher          估算大小
+     */
+    RefreshAheadCacheStrategy(int maxSize, long maxExpiredTime, long refreshAheadTime, long maxWeightBytes, @Nullable EntityWeigher<Entity> weigher) {
+        if (maxExpiredTime <= refreshAheadTime || refreshAheadTime <= 0) {
+            throw new IllegalArgumentException("刷新时间必须大于0且小于超时时间: " + refreshAheadTime + ", " + maxExpiredTime);
+        }
+        this.refreshAfterNanos = TimeUnit.MILLISECONDS.toNanos(maxExpiredTime - refreshAheadTime);
+        var builder = CacheBuilder.newBuilder();
+        var weighted = maxWeightBytes > 0 && weigher != null;
+        if (weighted) {
+            builder.maximumWeight(maxWeightBytes).weigher((ID id, Node<Entity> node) -> {
+                var weight = weigher.weigh(node.entity);
+                weightBytes.add(weight);
+                return weight;
+            });
+        } else {
+            builder.maximumSize(maxSize);
+        }
+        this.weigher = weighted ? weigher : null;
+        this.cache = builder
+                .expireAfterAccess(maxExpiredTime, TimeUnit.MILLISECONDS)
+                .<ID, Node<Entity>>removalListener(notification -> {
+                    if (notification.wasEvicted()) {
+                        evictionCount.increment();
+                    }
+                    var replaced = notification.getCause() == RemovalCause.REPLACED;
+                    // 重新估算权重时替换为同一个节点，不减去权重
+                    if (replaced && cached(notification.getKey(), notification.getValue())) {
+                        return;
+                    }
+                    var value = notification.getValue().entity;
+                    if (weighted) {
+                        weightBytes.add(-value.cacheWeight);
+                    }
+                    // 被替换的数据不执行卸载回调，新数据的放入回调负责索引和冷数据层；重复放入同一个对象不回调
+                    if (!replaced) {
+                        callbacks.forEach(e -> e.accept(value));
+                    } else if (!cachedEntity(notification.getKey(), value)) {
+                        replaceCallbacks.forEach(e -> e.accept(value));
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public void put(Entity entity) {
+        cache.put(entity.id(), new Node<>(entity));
+        putCallbacks.forEach(e -> e.accept(entity));
+    }
+
+    @Override
+    public boolean putIfAbsent(Entity entity) {
+        if (cache.asMap().putIfAbsent(entity.id(), new Node<>(entity)) == null) {
+            putCallbacks.forEach(e -> e.accept(entity));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void delete(ID id) {
+        cache.invalidate(id);
+    }
+
+    @Override
+    public List<Entity> list() {
+        return cache.asMap()
+                .values()
+                .stream()
+                .map(e -> e.entity)
+                .toList();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Entity> action) {
+        cache.asMap().values().forEach(node -> action.accept(node.entity));
+    }
+
+    @Override
+    public Spliterator<Entity> spliterator() {
+        return cache.asMap().values().stream().map(node -> node.entity).spliterator();
+    }
+
+    @Override
+    public Optional<Entity> get(ID id) {
+        var node = cache.getIfPresent(id);
+        if (node == null) {
+            return Optional.empty();
+        }
+        if (refresher != null && System.nanoTime() - node.loadTime >= refreshAfterNanos
+                && node.refreshing.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> refresh(id, node));
+            } catch (RejectedExecutionException ex) {
+                // 异步队列已满，下次访问再刷新
+                refreshSkipCount.increment();
+                node.refreshing.set(false);
+            }
+        }
+        return Optional.of(node.entity);
+    }
+
+    /**
+     * 原地刷新，不替换缓存节点；跳过时同样重新计时，失败时下次访问重试
+     */
+    private void refresh(ID id, Node<Entity> node) {
+        try {
+            if (refresher.test(node.entity)) {
+                refreshCount.increment();
+                reweigh(id);
+            } else {
+                refreshSkipCount.increment();
+            }
+            node.loadTime = System.nanoTime();
+        } catch (Exception ex) {
+            log.error("刷新缓存失败 {}", id, ex);
+        } finally {
+            node.refreshing.set(false);
+        }
+    }
+
+    @Override
+    public void addRemoveCallback(Consumer<Entity> consumer) {
+        callbacks.add(consumer);
+    }
+
+    @Override
+    public void addPutCallback(Consumer<Entity> consumer) {
+        putCallbacks.add(consumer);
+    }
+
+    @Override
+    public void addReplaceCallback(Consumer<Entity> consumer) {
+        replaceCallbacks.add(consumer);
+    }
+
+    @Override
+    public void setRefresher(Predicate<Entity> refresher, Executor executor) {
+        this.executor = executor;
+        this.refresher = refresher;
+    }
+
+    @Override
+    public void reweigh(ID id) {
+        if (weigher == null) {
+            return;
+        }
+        var node = cache.asMap().get(id);
+        if (node == null) {
+            return;
+        }
+        var old = weigher.reweigh(node.entity);
+        // 替换为同一个节点，缓存重新计算权重
+        if (old != node.entity.cacheWeight && cache.asMap().replace(id, node, node)) {
+            weightBytes.add(-old);
+        }
+    }
+
+    /**
+     * 是否仍是缓存中的节点
+     */
+    private boolean cached(ID id, Node<Entity> node) {
+        return cache.asMap().get(id) == node;
+    }
+
+    private boolean cachedEntity(ID id, Entity entity) {
+        var node = cache.asMap().get(id);
+        return node != null && node.entity == entity;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(cache.size(), evictionCount.sum(), refreshCount.sum(), refreshSkipCount.sum(), weightBytes.sum());
+    }
+
+    /**
+     * 缓存节点
+     */
+    static final class Node<Entity> {
+        final Entity entity;
+        /**
+         * 加载或上次刷新的时间
+         */
+        volatile long loadTime = System.nanoTime();
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Node(Entity entity) {
+            this.entity = entity;
+        }
+    }
+}
+
+/**
+ * 采用W-TinyLFU淘汰策略(Caffeine)
+ * 新数据先进入窗口区，淘汰时按访问频率决定是否替换主区数据，批量扫描不会冲掉热点数据
+ * 读写先记录到缓冲区，由读写线程分批维护淘汰顺序，不在每次访问时加锁
+ */
+final class TinyLfuCacheStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> implements CacheStrategy<ID, Entity> {
+
+    private final com.github.benmanes.caffeine.cache.Cache<ID, Entity> cache;
+    @Nullable
+    private final EntityWeigher<Entity> weigher;
+
+    private final LinkedBlockingQueue<Consumer<Entity>> callbacks = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Consumer<Entity>> putCallbacks = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Consumer<Entity>> replaceCallbacks = new LinkedBlockingQueue<>();
+
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder weightBytes = new LongAdder();
+
+    /**
+     * @param maxSize        最大数量
+     * @param maxExpiredTime 最大超时时间(ms), -1 代表永久
+     */
+    TinyLfuCacheStrategy(int maxSize, long maxExpiredTime) {
+        this(maxSize, maxExpiredTime, -1, null);
+    }
+
+    /**
+     * @param maxSize        最大数量
+     * @param maxExpiredTime 最大超时时间(ms), -1 代表永久
+     * @param maxWeightBytes 最大字节数，大于0时按大小淘汰，忽略最大数量
+     * @param weigher        估算大小
+     */
+    TinyLfuCacheStrategy(int maxSize, long maxExpiredTime, long maxWeightBytes, @Nullable EntityWeigher<Entity> weigher) {
+        var builder = Caffeine.newBuilder();
+        var weighted = maxWeightBytes > 0 && weigher != null;
+        if (weighted) {
+            builder.maximumWeight(maxWeightBytes).weigher((ID id, Entity entity) -> {
+                var weight = weigher.weigh(entity);
+                weightBytes.add(weight);
+                return weight;
+            });
+        } else {
+            builder.maximumSize(maxSize);
+        }
+        if (maxExpiredTime > 0) {
+            builder.expireAfterAccess(maxExpiredTime, TimeUnit.MILLISECONDS);
+        }
+        // 在调用线程中维护和回调，与LRU一样同步执行卸载回调
+        this.weigher = weighted ? weigher : null;
+        this.cache = builder.executor(Runnable::run)
+                .<ID, Entity>removalListener((id, value, cause) -> {
+                    if (cause.wasEvicted()) {
+                        evictionCount.increment();
+                    }
+                    // 重新估算权重时替换为同一个对象，不是卸载
+                    var replaced = cause == com.github.benmanes.caffeine.cache.RemovalCause.REPLACED;
+                    if (replaced && cached(id, value)) {
+                        return;
+                    }
+                    if (weighted) {
+                        weightBytes.add(-value.cacheWeight);
+                    }
+                    (replaced ? replaceCallbacks : callbacks).forEach(e -> e.accept(value));
+                })
+                .build();
+    }
+
+    @Override
+    public void put(Entity entity) {
+        cache.put(entity.id(), entity);
+        putCallbacks.forEach(e -> e.accept(entity));
+    }
+
+    @Override
+    public boolean putIfAbsent(Entity entity) {
+        if (cache.asMap().putIfAbsent(entity.id(), entity) == null) {
+            putCallbacks.forEach(e -> e.accept(entity));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void delete(ID id) {
+        cache.invalidate(id);
+    }
+
+    @Override
+    public List<Entity> list() {
+        return List.copyOf(cache.asMap().values());
+    }
+
+    @Override
+    public void forEach(Consumer<? super Entity> action) {
+        cache.asMap().values().forEach(action);
+    }
+
+    @Override
+    public Spliterator<Entity> spliterator() {
+        return cache.asMap().values().spliterator();
+    }
+
     @Override
     public Optional<Entity> get(ID id) {
         return Optional.ofNullable(cache.getIfPresent(id));
@@ -100,17 +597,235 @@ sealed class LRUCacheStrategy<ID extends Comparable<ID>, Entity extends Abstract
     public void addRemoveCallback(Consumer<Entity> consumer) {
         callbacks.add(consumer);
     }
+
+    @Override
+    public void addPutCallback(Consumer<Entity> consumer) {
+        putCallbacks.add(consumer);
+    }
+
+    @Override
+    public void addReplaceCallback(Consumer<Entity> consumer) {
+        replaceCallbacks.add(consumer);
+    }
+
+    @Override
+    public void setRefresher(Predicate<Entity> refresher, Executor executor) {
+
+    }
+
+    @Override
+    public void reweigh(ID id) {
+        if (weigher == null) {
+            return;
+        }
+        var entity = cache.asMap().get(id);
+        if (entity == null) {
+            return;
+        }
+        var old = weigher.reweigh(entity);
+        // 替换为同一个对象，缓存重新计算权重
+        if (old != entity.cacheWeight && cache.asMap().replace(id, entity, entity)) {
+            weightBytes.add(-old);
+        }
+    }
+
+    /**
+     * 是否仍是缓存中的对象
+     */
+    private boolean cached(ID id, Entity entity) {
+        return cache.asMap().get(id) == entity;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(cache.estimatedSize(), evictionCount.sum(), 0, 0, weightBytes.sum());
+    }
 }
 
 /**
  * 持久化，不采用淘汰策略
+ * 没有淘汰就不需要维护访问顺序，直接使用ConcurrentHashMap，读取无锁，并行遍历时可以均匀分割
  */
-final class PersistCacheStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> extends LRUCacheStrategy<ID, Entity> {
+final class PersistCacheStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> implements CacheStrategy<ID, Entity> {
+
+    private final ConcurrentHashMap<ID, Entity> cache = new ConcurrentHashMap<>();
+
+    private final LinkedBlockingQueue<Consumer<Entity>> callbacks = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Consumer<Entity>> putCallbacks = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Consumer<Entity>> replaceCallbacks = new LinkedBlockingQueue<>();
+
+    @Override
+    public void put(Entity entity) {
+        var old = cache.put(entity.id(), entity);
+        if (old != null && old != entity) {
+            replaceCallbacks.forEach(e -> e.accept(old));
+        }
+        putCallbacks.forEach(e -> e.accept(entity));
+    }
+
+    @Override
+    public boolean putIfAbsent(Entity entity) {
+        if (cache.putIfAbsent(entity.id(), entity) == null) {
+            putCallbacks.forEach(e -> e.accept(entity));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void delete(ID id) {
+        var old = cache.remove(id);
+        if (old != null) {
+            callbacks.forEach(e -> e.accept(old));
+        }
+    }
+
+    @Override
+    public List<Entity> list() {
+        return List.copyOf(cache.values());
+    }
+
+    @Override
+    public void forEach(Consumer<? super Entity> action) {
+        cache.values().forEach(action);
+    }
+
+    @Override
+    public Spliterator<Entity> spliterator() {
+        return cache.values().spliterator();
+    }
+
+    @Override
+    public Optional<Entity> get(ID id) {
+        return Optional.ofNullable(cache.get(id));
+    }
+
+    @Override
+    public void addRemoveCallback(Consumer<Entity> consumer) {
+        callbacks.add(consumer);
+    }
+
+    @Override
+    public void addPutCallback(Consumer<Entity> consumer) {
+        putCallbacks.add(consumer);
+    }
+
+    @Override
+    public void addReplaceCallback(Consumer<Entity> consumer) {
+        replaceCallbacks.add(consumer);
+    }
+
+    @Override
+    public void setRefresher(Predicate<Entity> refresher, Executor executor) {
 
-    PersistCacheStrategy() {
-        super(Integer.MAX_VALUE, -1);
     }
 
+    @Override
+    public void reweigh(ID id) {
+
+    }
+
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(cache.size(), 0, 0, 0, 0);
+    }
+}
+
+/**
+ * 持久化，int/long主键使用，按原始类型存储主键，不装箱
+ */
+final class LongPersistCacheStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> implements CacheStrategy<ID, Entity> {
+
+    private final ConcurrentLongMap<Entity> cache = new ConcurrentLongMap<>();
+
+    private final ToLongFunction<ID> keyFunction;
+
+    private final LinkedBlockingQueue<Consumer<Entity>> callbacks = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Consumer<Entity>> putCallbacks = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Consumer<Entity>> replaceCallbacks = new LinkedBlockingQueue<>();
+
+    /**
+     * @param keyFunction 主键转换为long
+     */
+    LongPersistCacheStrategy(ToLongFunction<ID> keyFunction) {
+        this.keyFunction = keyFunction;
+    }
+
+    @Override
+    public void put(Entity entity) {
+        var old = cache.put(keyFunction.applyAsLong(entity.id()), entity);
+        if (old != null && old != entity) {
+            replaceCallbacks.forEach(e -> e.accept(old));
+        }
+        putCallbacks.forEach(e -> e.accept(entity));
+    }
+
+    @Override
+    public boolean putIfAbsent(Entity entity) {
+        if (cache.putIfAbsent(keyFunction.applyAsLong(entity.id()), entity) == null) {
+            putCallbacks.forEach(e -> e.accept(entity));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void delete(ID id) {
+        var old = cache.remove(keyFunction.applyAsLong(id));
+        if (old != null) {
+            callbacks.forEach(e -> e.accept(old));
+        }
+    }
+
+    @Override
+    public List<Entity> list() {
+        return Collections.unmodifiableList(cache.values());
+    }
+
+    @Override
+    public void forEach(Consumer<? super Entity> action) {
+        cache.forEach(action);
+    }
+
+    @Override
+    public Spliterator<Entity> spliterator() {
+        return cache.spliterator();
+    }
+
+    @Override
+    public Optional<Entity> get(ID id) {
+        return Optional.ofNullable(cache.get(keyFunction.applyAsLong(id)));
+    }
+
+    @Override
+    public void addRemoveCallback(Consumer<Entity> consumer) {
+        callbacks.add(consumer);
+    }
+
+    @Override
+    public void addPutCallback(Consumer<Entity> consumer) {
+        putCallbacks.add(consumer);
+    }
+
+    @Override
+    public void addReplaceCallback(Consumer<Entity> consumer) {
+        replaceCallbacks.add(consumer);
+    }
+
+    @Override
+    public void setRefresher(Predicate<Entity> refresher, Executor executor) {
+
+    }
+
+    @Override
+    public void reweigh(ID id) {
+
+    }
+
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(cache.size(), 0, 0, 0, 0);
+    }
 }
 
 /**
@@ -122,6 +837,11 @@ final class NoCacheStrategy<ID extends Comparable<ID>, Entity extends AbstractEn
 
     }
 
+    @Override
+    public boolean putIfAbsent(Entity entity) {
+        return false;
+    }
+
     @Override
     public void delete(ID id) {
 
@@ -132,6 +852,16 @@ final class NoCacheStrategy<ID extends Comparable<ID>, Entity extends AbstractEn
         return Collections.emptyList();
     }
 
+    @Override
+    public void forEach(Consumer<? super Entity> action) {
+
+    }
+
+    @Override
+    public Spliterator<Entity> spliterator() {
+        return Spliterators.emptySpliterator();
+    }
+
     @Override
     public Optional<Entity> get(ID id) {
         return Optional.empty();
@@ -141,4 +871,29 @@ final class NoCacheStrategy<ID extends Comparable<ID>, Entity extends AbstractEn
     public void addRemoveCallback(Consumer<Entity> supplier) {
 
     }
+
+    @Override
+    public void addPutCallback(Consumer<Entity> consumer) {
+
+    }
+
+    @Override
+    public void addReplaceCallback(Consumer<Entity> consumer) {
+
+    }
+
+    @Override
+    public void setRefresher(Predicate<Entity> refresher, Executor executor) {
+
+    }
+
+    @Override
+    public void reweigh(ID id) {
+
+    }
+
+    @Override
+    public CacheStats stats() {
+        return CacheStats.EMPTY;
+    }
 }
@@ -0,0 +1,94 @@
+package org.manaslu.cache.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.manaslu.cache.core.exception.ManasluException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 缓存预热
+ * 单线程流式读取数据库，分批交给线程池并行创建增强对象并放入缓存
+ */
+@Slf4j
+final class CacheWarmer<ID extends Comparable<ID>, E extends AbstractEntity<ID>> {
+
+    /**
+     * 每批数量
+     */
+    static final int BATCH_SIZE = 1000;
+    /**
+     * 每多少条打印一次进度
+     */
+    static final int PROGRESS_INTERVAL = 100_000;
+
+    private final String name;
+    private final DumpStrategy<ID, E> dumpStrategy;
+    /**
+     * 处理单条原始数据
+     */
+    private final Consumer<E> handler;
+
+    CacheWarmer(String name, DumpStrategy<ID, E> dumpStrategy, Consumer<E> handler) {
+        this.name = name;
+        this.dumpStrategy = dumpStrategy;
+        this.handler = handler;
+    }
+
+    /**
+     * 阻塞直到预热完成
+     *
+     * @param parallelism 并行数
+     * @return 预热数量
+     */
+    long warmUp(int parallelism) {
+        var start = System.currentTimeMillis();
+        var counter = new AtomicLong();
+        // 限制未处理的批次，防止读取过快占满内存
+        var semaphore = new Semaphore(parallelism * 2);
+        var futures = new ArrayList<CompletableFuture<Void>>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                Thread.ofPlatform().name("manaslu-warmup-" + name + "-", 0).factory())) {
+            var batch = new ArrayList<E>(BATCH_SIZE);
+            dumpStrategy.scan(raw -> {
+                batch.add(raw);
+                if (batch.size() >= BATCH_SIZE) {
+                    futures.add(submit(executor, semaphore, List.copyOf(batch), counter, start));
+                    batch.clear();
+                }
+            });
+            if (!batch.isEmpty()) {
+                futures.add(submit(executor, semaphore, List.copyOf(batch), counter, start));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (Exception ex) {
+            log.error("预热失败 {}", name, ex);
+            throw new ManasluException("预热失败" + name, ex);
+        }
+        var cost = Math.max(System.currentTimeMillis() - start, 1);
+        log.info("预热完成 {}, 数量 = {}, 耗时 = {}ms, 速度 = {}条/s", name, counter.get(), cost, counter.get() * 1000 / cost);
+        return counter.get();
+    }
+
+    private CompletableFuture<Void> submit(ExecutorService executor, Semaphore semaphore, List<E> batch, AtomicLong counter, long start) {
+        semaphore.acquireUninterruptibly();
+        return CompletableFuture.runAsync(() -> {
+            try {
+                batch.forEach(handler);
+                var before = counter.getAndAdd(batch.size());
+                if ((before + batch.size()) / PROGRESS_INTERVAL != before / PROGRESS_INTERVAL) {
+                    var cost = Math.max(System.currentTimeMillis() - start, 1);
+                    log.info("预热中 {}, 数量 = {}, 速度 = {}条/s", name, before + batch.size(), (before + batch.size()) * 1000 / cost);
+                }
+            } finally {
+                semaphore.release();
+            }
+        }, executor);
+    }
+}
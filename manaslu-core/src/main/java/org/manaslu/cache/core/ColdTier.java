@@ -0,0 +1,216 @@
+package org.manaslu.cache.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.manaslu.cache.core.exception.ManasluException;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+/**
+ * 冷数据层，缓存淘汰的数据序列化后存入堆外内存或内存映射文件，未命中缓存时先从这里恢复，再查询数据库
+ * 环形写入，空间不足时覆盖最早写入的数据；取出后删除，数据回到缓存后只有缓存中的是最新的
+ * 内存映射文件只作为堆外空间使用，重启后不保留
+ */
+@Slf4j
+final class ColdTier<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> {
+
+    private static final ColdTier<?, ?> DISABLED = new ColdTier<>();
+
+    @Nullable
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final Function<Entity, byte[]> encoder;
+    private final Function<byte[], Entity> decoder;
+
+    private final StampedLock lock = new StampedLock();
+    /**
+     * 主键对应的位置
+     */
+    private final Map<ID, Slot<ID>> index = new HashMap<>();
+    /**
+     * 按写入顺序的位置，覆盖时从头部移除
+     */
+    private final ArrayDeque<Slot<ID>> slots = new ArrayDeque<>();
+    /**
+     * 累计写入字节数，对容量取模为写入位置
+     */
+    private long head;
+    private long usedBytes;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private ColdTier() {
+        this.buffer = null;
+        this.capacity = 0;
+        this.encoder = null;
+        this.decoder = null;
+    }
+
+    /**
+     * @param maxBytes 最大字节数
+     * @param file     内存映射文件，为空时使用堆外内存
+     * @param encoder  序列化
+     * @param decoder  反序列化
+     */
+    ColdTier(long maxBytes, String file, Function<Entity, byte[]> encoder, Function<byte[], Entity> decoder) {
+        if (maxBytes <= 0 || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("冷数据层大小必须在1到" + Integer.MAX_VALUE + "之间: " + maxBytes);
+        }
+        this.capacity = (int) maxBytes;
+        this.encoder = encoder;
+        this.decoder = decoder;
+        if (file == null || file.isEmpty()) {
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+        } else {
+            try (var channel = FileChannel.open(Path.of(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } catch (IOException ex) {
+                throw new ManasluException("映射冷数据文件失败: " + file, ex);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> ColdTier<ID, Entity> disabled() {
+        return (ColdTier<ID, Entity>) DISABLED;
+    }
+
+    boolean enabled() {
+        return buffer != null;
+    }
+
+    /**
+     * 存入淘汰的数据，序列化失败或超过容量时只记录日志
+     */
+    void put(Entity entity) {
+        if (buffer == null) {
+            return;
+        }
+        byte[] bytes;
+        try {
+            bytes = encoder.apply(entity);
+        } catch (Exception ex) {
+            log.error("冷数据序列化失败 {}", entity.id(), ex);
+            return;
+        }
+        if (bytes.length > capacity) {
+            log.warn("数据超过冷数据层容量 {}: {}", entity.id(), bytes.length);
+            return;
+        }
+        var writeLock = lock.writeLock();
+        try {
+            // 覆盖最早写入的数据
+            while (!slots.isEmpty() && head + bytes.length - slots.peekFirst().offset > capacity) {
+                var oldest = slots.pollFirst();
+                if (index.get(oldest.id) == oldest) {
+                    index.remove(oldest.id);
+                    usedBytes -= oldest.length;
+                    evictionCount.increment();
+                }
+            }
+            int position = (int) (head % capacity);
+            int first = Math.min(bytes.length, capacity - position);
+            buffer.put(position, bytes, 0, first);
+            if (first < bytes.length) {
+                buffer.put(0, bytes, first, bytes.length - first);
+            }
+            var slot = new Slot<>(entity.id(), head, bytes.length);
+            var old = index.put(slot.id, slot);
+            if (old != null) {
+                usedBytes -= old.length;
+            }
+            usedBytes += slot.length;
+            slots.addLast(slot);
+            head += bytes.length;
+        } finally {
+            lock.unlockWrite(writeLock);
+        }
+    }
+
+    /**
+     * 取出并删除
+     */
+    Optional<Entity> take(ID id) {
+        if (buffer == null) {
+            return Optional.empty();
+        }
+        byte[] bytes;
+        var writeLock = lock.writeLock();
+        try {
+            var slot = index.remove(id);
+            if (slot == null) {
+                missCount.increment();
+                return Optional.empty();
+            }
+            usedBytes -= slot.length;
+            bytes = new byte[slot.length];
+            int position = (int) (slot.offset % capacity);
+            int first = Math.min(slot.length, capacity - position);
+            buffer.get(position, bytes, 0, first);
+            if (first < slot.length) {
+                buffer.get(0, bytes, first, slot.length - first);
+            }
+        } finally {
+            lock.unlockWrite(writeLock);
+        }
+        try {
+            var entity = decoder.apply(bytes);
+            hitCount.increment();
+            return Optional.of(entity);
+        } catch (Exception ex) {
+            // 反序列化失败时从数据库加载
+            log.error("冷数据反序列化失败 {}", id, ex);
+            missCount.increment();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 删除，数据重新放入缓存或者被删除时调用
+     */
+    void invalidate(ID id) {
+        if (buffer == null) {
+            return;
+        }
+        var writeLock = lock.writeLock();
+        try {
+            var slot = index.remove(id);
+            if (slot != null) {
+                usedBytes -= slot.length;
+            }
+        } finally {
+            lock.unlockWrite(writeLock);
+        }
+    }
+
+    ColdTierStats stats() {
+        if (buffer == null) {
+            return ColdTierStats.EMPTY;
+        }
+        var readLock = lock.readLock();
+        try {
+            return new ColdTierStats(index.size(), usedBytes, capacity, hitCount.sum(), missCount.sum(), evictionCount.sum());
+        } finally {
+            lock.unlockRead(readLock);
+        }
+    }
+
+    /**
+     * @param offset 写入时的累计字节数
+     */
+    private record Slot<ID>(ID id, long offset, int length) {
+    }
+}
@@ -0,0 +1,16 @@
+package org.manaslu.cache.core;
+
+/**
+ * 冷数据层统计
+ *
+ * @param size          当前数量
+ * @param usedBytes     有效数据占用字节数
+ * @param maxBytes      最大字节数
+ * @param hitCount      恢复次数
+ * @param missCount     未命中次数
+ * @param evictionCount 被覆盖的数量
+ */
+public record ColdTierStats(long size, long usedBytes, long maxBytes, long hitCount, long missCount, long evictionCount) {
+
+    static final ColdTierStats EMPTY = new ColdTierStats(0, 0, 0, 0, 0, 0);
+}
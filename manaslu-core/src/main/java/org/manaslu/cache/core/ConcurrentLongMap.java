@@ -0,0 +1,301 @@
+package org.manaslu.cache.core;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+/**
+ * 分段的long主键哈希表，每段一个LongHashMap
+ * 读取先乐观读，被修改打断时再加读锁；写入只锁所在的段
+ *
+ * @param <V> 值，不能为null
+ */
+final class ConcurrentLongMap<V> {
+
+    private final Segment<V>[] segments;
+    private final int mask;
+
+    @SuppressWarnings("unchecked")
+    ConcurrentLongMap() {
+        int n = 1;
+        while (n < Runtime.getRuntime().availableProcessors() * 4) {
+            n <<= 1;
+        }
+        this.segments = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            segments[i] = new Segment<>();
+        }
+        this.mask = n - 1;
+    }
+
+    private Segment<V> segment(long key) {
+        // 与LongHashMap使用不同的位，避免同一段内聚集
+        return segments[(int) ((key * 0xC2B2AE3D27D4EB4FL) >>> 40) & mask];
+    }
+
+    @Nullable
+    V get(long key) {
+        var segment = segment(key);
+        var stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            var v = segment.map.get(key);
+            if (segment.lock.validate(stamp)) {
+                return v;
+            }
+        }
+        stamp = segment.lock.readLock();
+        try {
+            return segment.map.get(key);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    @Nullable
+    V put(long key, V value) {
+        var segment = segment(key);
+        var stamp = segment.lock.writeLock();
+        try {
+            return segment.map.put(key, value);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Nullable
+    V putIfAbsent(long key, V value) {
+        var segment = segment(key);
+        var stamp = segment.lock.writeLock();
+        try {
+            return segment.map.putIfAbsent(key, value);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 不存在时放入value，存在时放入function(旧值, value)
+     *
+     * @return 旧值，不存在时为null
+     */
+    @Nullable
+    V merge(long key, V value, BinaryOperator<V> function) {
+        var segment = segment(key);
+        var stamp = segment.lock.writeLock();
+        try {
+            var old = segment.map.get(key);
+            var merged = old == null ? value : function.apply(old, value);
+            segment.map.put(key, merged);
+            return old;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Nullable
+    V remove(long key) {
+        var segment = segment(key);
+        var stamp = segment.lock.writeLock();
+        try {
+            return segment.map.remove(key);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    long size() {
+        long size = 0;
+        for (var segment : segments) {
+            var stamp = segment.lock.readLock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    List<V> values() {
+        var list = new ArrayList<V>();
+        for (var segment : segments) {
+            var stamp = segment.lock.readLock();
+            try {
+                segment.map.forEachValue(list::add);
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 不复制，不在锁内执行action，见SegmentSpliterator
+     */
+    void forEach(Consumer<? super V> action) {
+        spliterator().forEachRemaining(action);
+    }
+
+    /**
+     * 按段分割
+     */
+    Spliterator<V> spliterator() {
+        return new SegmentSpliterator(0, segments.length);
+    }
+
+    private static final class Segment<V> {
+        final StampedLock lock = new StampedLock();
+        final LongHashMap<V> map = new LongHashMap<>();
+    }
+
+    /**
+     * 逐段在乐观读下直接读取表，每个位置验证通过才执行action，不复制也不在锁内执行action
+     * 遍历期间该段被修改时加读锁取出剩余的数据，按已遍历的主键跳过，每个数据最多出现一次
+     */
+    private final class SegmentSpliterator implements Spliterator<V> {
+        private int index;
+        private final int end;
+        /**
+         * 正在遍历的段，没有时为null
+         */
+        @Nullable
+        private Segment<V> segment;
+        private LongHashMap.Table table;
+        private long stamp;
+        private int position;
+        /**
+         * 当前段已遍历的主键，段之间复用
+         */
+        private long[] visited = new long[0];
+        private int visitedCount;
+        /**
+         * 当前段被修改后剩余的数据
+         */
+        @Nullable
+        private Iterator<V> rest;
+
+        SegmentSpliterator(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super V> action) {
+            while (true) {
+                if (rest != null) {
+                    if (rest.hasNext()) {
+                        action.accept(rest.next());
+                        return true;
+                    }
+                    rest = null;
+                    segment = null;
+                }
+                if (segment == null) {
+                    if (index >= end) {
+                        return false;
+                    }
+                    begin(segments[index++]);
+                    continue;
+                }
+                if (position >= table.values.length) {
+                    segment = null;
+                    continue;
+                }
+                var value = table.values[position];
+                var key = table.keys[position];
+                if (!segment.lock.validate(stamp)) {
+                    rest = rest();
+                    continue;
+                }
+                position++;
+                if (value == null) {
+                    continue;
+                }
+                if (visitedCount == visited.length) {
+                    visited = Arrays.copyOf(visited, Math.max(16, visitedCount * 2));
+                }
+                visited[visitedCount++] = key;
+                action.accept((V) value);
+                return true;
+            }
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super V> action) {
+            while (tryAdvance(action)) {
+                // 逐个执行
+            }
+        }
+
+        private void begin(Segment<V> segment) {
+            this.segment = segment;
+            this.stamp = segment.lock.tryOptimisticRead();
+            this.table = segment.map.table();
+            this.position = 0;
+            this.visitedCount = 0;
+            // 正在写入时直接加读锁
+            if (stamp == 0) {
+                rest = rest();
+            }
+        }
+
+        /**
+         * 加读锁取出当前段未遍历的数据
+         */
+        @SuppressWarnings("unchecked")
+        private Iterator<V> rest() {
+            Arrays.sort(visited, 0, visitedCount);
+            var list = new ArrayList<V>();
+            var readStamp = segment.lock.readLock();
+            try {
+                var t = segment.map.table();
+                for (int i = 0; i < t.values.length; i++) {
+                    if (t.values[i] != null && Arrays.binarySearch(visited, 0, visitedCount, t.keys[i]) < 0) {
+                        list.add((V) t.values[i]);
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(readStamp);
+            }
+            return list.iterator();
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            int mid = (index + end) >>> 1;
+            if (mid <= index) {
+                return null;
+            }
+            var split = new SegmentSpliterator(index, mid);
+            index = mid;
+            return split;
+        }
+
+        /**
+         * 剩余段的数量加当前段未遍历的数量，并发修改时是估计值
+         */
+        @Override
+        public long estimateSize() {
+            long size = 0;
+            for (int i = index; i < end; i++) {
+                size += segments[i].map.size();
+            }
+            if (segment != null) {
+                size += Math.max(0, segment.map.size() - visitedCount);
+            }
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.NONNULL | Spliterator.CONCURRENT;
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package org.manaslu.cache.core;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * 数据库操作
@@ -10,9 +16,105 @@ public interface DbOperator<ID extends Comparable<ID>, Entity extends AbstractEn
 
     Optional<Entity> select(ID id);
 
+    /**
+     * 批量查询，一次访问数据库，默认逐条查询
+     *
+     * @param ids 主键
+     * @return 查到的数据，不存在的主键不会出现在结果中
+     */
+    default Map<ID, Entity> selectAll(@Nonnull Collection<ID> ids) {
+        var result = new HashMap<ID, Entity>(ids.size() * 2);
+        for (ID id : ids) {
+            select(id).ifPresent(e -> result.put(id, e));
+        }
+        return result;
+    }
+
+    /**
+     * 是否支持forEachId和scan，布隆过滤器和预热需要，创建仓库时检查
+     * 默认按是否实现了scan判断
+     */
+    default boolean supportsScan() {
+        return overridden(getClass(), "scan", Consumer.class);
+    }
+
+    /**
+     * 流式遍历所有主键，默认遍历所有数据取主键，可以只查询主键时覆盖
+     */
+    default void forEachId(@Nonnull Consumer<ID> consumer) {
+        scan(e -> consumer.accept(e.id()));
+    }
+
+    /**
+     * 流式遍历所有数据，不支持时不实现
+     */
+    default void scan(@Nonnull Consumer<Entity> consumer) {
+        throw new UnsupportedOperationException("不支持遍历 " + getClass().getName());
+    }
+
     Optional<ID> insert(@Nonnull Entity entity);
 
+    /**
+     * 批量新增，一次访问数据库，默认逐条新增
+     *
+     * @return 与传入顺序对应的生成主键
+     */
+    default List<Optional<ID>> insertAll(@Nonnull List<Entity> entities) {
+        var ids = new ArrayList<Optional<ID>>(entities.size());
+        for (var entity : entities) {
+            ids.add(insert(entity));
+        }
+        return ids;
+    }
+
     void update(@Nonnull UpdateInfo<ID, Entity> entity);
 
+    /**
+     * 批量更新，一次访问数据库，默认逐条更新
+     */
+    default void updateAll(@Nonnull List<UpdateInfo<ID, Entity>> infos) {
+        infos.forEach(this::update);
+    }
+
     void delete(ID id);
+
+    /**
+     * 批量删除，一次访问数据库，默认逐条删除
+     */
+    default void deleteAll(@Nonnull Collection<ID> ids) {
+        ids.forEach(this::delete);
+    }
+
+    /**
+     * 是否支持encode和decode，冷数据层和预写日志需要，创建仓库时检查
+     * 默认按是否同时实现了encode和decode判断
+     */
+    default boolean supportsEncode() {
+        return overridden(getClass(), "encode", AbstractEntity.class) && overridden(getClass(), "decode", byte[].class);
+    }
+
+    /**
+     * 序列化，用于冷数据层和预写日志，格式由实现决定，不支持时不实现
+     */
+    default byte[] encode(@Nonnull Entity entity) {
+        throw new UnsupportedOperationException("不支持序列化 " + getClass().getName());
+    }
+
+    /**
+     * 反序列化encode的结果
+     */
+    default Entity decode(@Nonnull byte[] bytes) {
+        throw new UnsupportedOperationException("不支持序列化 " + getClass().getName());
+    }
+
+    /**
+     * 实现类是否覆盖了接口的默认方法
+     */
+    private static boolean overridden(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes).getDeclaringClass() != DbOperator.class;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
 }
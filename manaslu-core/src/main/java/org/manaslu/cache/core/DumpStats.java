@@ -0,0 +1,29 @@
+package org.manaslu.cache.core;
+
+/**
+ * 延迟入库统计，定时入库的每个时间片和全部入库各算一次执行
+ *
+ * @param runCount     执行次数
+ * @param flushedCount 累计入库数量
+ * @param lastFlushed  最近一次入库数量
+ * @param lastRunNanos 最近一次耗时(ns)
+ * @param maxRunNanos  单次最大耗时(ns)
+ * @param suppressedEntityCount 变化检测后没有写入数据库的实体数量
+ * @param suppressedFieldCount  变化检测后没有写入数据库的字段数量
+ * @param snapshotRetryCount    入库快照复制期间实体被修改而重新复制的次数
+ */
+public record DumpStats(long runCount, long flushedCount, long lastFlushed, long lastRunNanos, long maxRunNanos,
+                        long suppressedEntityCount, long suppressedFieldCount, long snapshotRetryCount) {
+
+    static final DumpStats EMPTY = new DumpStats(0, 0, 0, 0, 0, 0, 0, 0);
+
+    DumpStats record(int flushed, long nanos) {
+        return new DumpStats(runCount + 1, flushedCount + flushed, flushed, nanos, Math.max(maxRunNanos, nanos),
+                suppressedEntityCount, suppressedFieldCount, snapshotRetryCount);
+    }
+
+    DumpStats counters(long suppressedEntityCount, long suppressedFieldCount, long snapshotRetryCount) {
+        return new DumpStats(runCount, flushedCount, lastFlushed, lastRunNanos, maxRunNanos, suppressedEntityCount, suppressedFieldCount,
+                snapshotRetryCount);
+    }
+}
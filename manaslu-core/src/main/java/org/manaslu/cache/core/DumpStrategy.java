@@ -3,34 +3,98 @@ package org.manaslu.cache.core;
 import lombok.extern.slf4j.Slf4j;
 import org.manaslu.cache.core.exception.ManasluException;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
 /**
  * 存储策略
  */
 public sealed interface DumpStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> permits AbstractDumpStrategy, NoDumpStrategy {
 
-    void update(UpdateInfo<ID, Entity> info);
+    /**
+     * 记录更新，增强类调用
+     *
+     * @param mask FieldMask的更新字段掩码
+     */
+    void update(Entity entity, long mask);
+
+    default void update(UpdateInfo<ID, Entity> info) {
+        update(info.entity(), info.mask());
+    }
 
     /**
      * 直接刷新
      */
     void flush(ID id);
 
+    /**
+     * 是否有未入库的更新
+     */
+    boolean isDirty(ID id);
+
+    /**
+     * 有未入库更新的数量
+     */
+    int dirtyCount();
+
+    /**
+     * 延迟入库统计
+     */
+    DumpStats stats();
+
     Optional<Entity> select(ID id);
 
+    /**
+     * 批量查询
+     */
+    Map<ID, Entity> selectAll(Collection<ID> ids);
+
+    /**
+     * 流式遍历数据库所有数据
+     */
+    void scan(Consumer<Entity> consumer);
+
     Optional<ID> insert(Entity entity);
 
+    /**
+     * 批量新增
+     *
+     * @return 与传入顺序对应的生成主键
+     */
+    List<Optional<ID>> insertAll(List<Entity> entities);
+
     /**
      * 删除数据库数据，同时移除本次所有更新
      */
     void delete(ID id);
+
+    /**
+     * 批量删除数据库数据，同时移除本次所有更新
+     */
+    void deleteAll(Collection<ID> ids);
+
+    /**
+     * 延迟入库成功后回调，在入库线程执行
+     */
+    void addFlushCallback(Consumer<ID> callback);
 }
 
 /**
@@ -39,7 +103,7 @@ public sealed interface DumpStrategy<ID extends Comparable<ID>, Entity extends A
 final class NoDumpStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> implements DumpStrategy<ID, Entity> {
 
     @Override
-    public void update(UpdateInfo<ID, Entity> info) {
+    public void update(Entity entity, long mask) {
 
     }
 
@@ -48,20 +112,60 @@ final class NoDumpStrategy<ID extends Comparable<ID>, Entity extends AbstractEnt
 
     }
 
+    @Override
+    public boolean isDirty(ID id) {
+        return false;
+    }
+
+    @Override
+    public int dirtyCount() {
+        return 0;
+    }
+
+    @Override
+    public DumpStats stats() {
+        return DumpStats.EMPTY;
+    }
+
     @Override
     public Optional<Entity> select(ID id) {
         return Optional.empty();
     }
 
+    @Override
+    public Map<ID, Entity> selectAll(Collection<ID> ids) {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void scan(Consumer<Entity> consumer) {
+
+    }
+
     @Override
     public Optional<ID> insert(Entity entity) {
         return Optional.empty();
     }
 
+    @Override
+    public List<Optional<ID>> insertAll(List<Entity> entities) {
+        return Collections.nCopies(entities.size(), Optional.empty());
+    }
+
     @Override
     public void delete(ID id) {
 
     }
+
+    @Override
+    public void deleteAll(Collection<ID> ids) {
+
+    }
+
+    @Override
+    public void addFlushCallback(Consumer<ID> callback) {
+
+    }
 }
 
 abstract sealed class AbstractDumpStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> implements DumpStrategy<ID, Entity>
@@ -78,10 +182,28 @@ abstract sealed class AbstractDumpStrategy<ID extends Comparable<ID>, Entity ext
         return dbOperator.select(id);
     }
 
+    @Override
+    public Map<ID, Entity> selectAll(Collection<ID> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return dbOperator.selectAll(ids);
+    }
+
+    @Override
+    public void scan(Consumer<Entity> consumer) {
+        dbOperator.scan(consumer);
+    }
+
     @Override
     public Optional<ID> insert(Entity entity) {
         return dbOperator.insert(entity);
     }
+
+    @Override
+    public List<Optional<ID>> insertAll(List<Entity> entities) {
+        return dbOperator.insertAll(entities);
+    }
 }
 
 /**
@@ -94,9 +216,9 @@ final class ImmediateDumpStrategy<ID extends Comparable<ID>, Entity extends Abst
     }
 
     @Override
-    public void update(UpdateInfo<ID, Entity> info) {
+    public void update(Entity entity, long mask) {
         try {
-            dbOperator.update(info);
+            dbOperator.update(new UpdateInfo<>(entity, mask));
         } catch (Exception e) {
             log.error("数据入库异常", e);
             throw new ManasluException(e);
@@ -109,6 +231,21 @@ final class ImmediateDumpStrategy<ID extends Comparable<ID>, Entity extends Abst
         // do nothing
     }
 
+    @Override
+    public boolean isDirty(ID id) {
+        return false;
+    }
+
+    @Override
+    public int dirtyCount() {
+        return 0;
+    }
+
+    @Override
+    public DumpStats stats() {
+        return DumpStats.EMPTY;
+    }
+
     @Override
     public void delete(ID id) {
         try {
@@ -118,165 +255,645 @@ final class ImmediateDumpStrategy<ID extends Comparable<ID>, Entity extends Abst
             throw new ManasluException(e);
         }
     }
+
+    @Override
+    public void deleteAll(Collection<ID> ids) {
+        try {
+            dbOperator.deleteAll(ids);
+        } catch (Exception e) {
+            log.error("数据入库异常", e);
+            throw new ManasluException(e);
+        }
+    }
+
+    /**
+     * 在修改线程入库，不回调
+     */
+    @Override
+    public void addFlushCallback(Consumer<ID> callback) {
+
+    }
 }
 
 /**
  * 延迟更新策略
+ * 修改直接合并到并发的待入库表，不加锁；入库时按主键分段加锁，把数据从待入库表移到入库中表后立即解锁，数据库操作不持有任何锁
+ * 同一主键同时只有一个入库，入库完成前isDirty保持为true，失败时放回待入库表
+ * 全部入库时按batchSize分批批量更新
+ * 未入库的实体数量达到triggerCount时交给后台线程全部入库，同时最多一个；超过maxDirtyCount时修改线程等待入库
+ * 开启预写日志时每次修改都写入日志，一轮全部入库没有失败时删除这一轮开始前的日志
+ * 开启变化检测时入库前去掉值没有变化的字段
+ * 开启快照时入库前复制更新字段，序列化和数据库操作只读取快照
  */
 @Slf4j
 sealed abstract class DelayDumpStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> extends AbstractDumpStrategy<ID, Entity>
         permits IntervalDumpStrategy, CountDumpStrategy {
-    final Map<ID, UpdateInfo<ID, Entity>> cache = new HashMap<>();
-    final StampedLock lock = new StampedLock();
+    final IdMap<ID, UpdateInfo<ID, Entity>> cache;
+    /**
+     * 正在入库的数据
+     */
+    private final IdMap<ID, UpdateInfo<ID, Entity>> inflight;
+    /**
+     * 按主键分段的锁，只保护两个表之间的移动
+     */
+    private final StampedLock[] locks;
+    /**
+     * 每批入库的数量
+     */
+    private final int batchSize;
+    /**
+     * 触发后台入库的未入库数量
+     */
+    private final int triggerCount;
+    /**
+     * 未入库数量的硬上限
+     */
+    private final int maxDirtyCount;
+    /**
+     * 未入库的实体数量，与cache同步增减
+     */
+    private final AtomicInteger dirty = new AtomicInteger();
+    /**
+     * 是否有后台入库在进行
+     */
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final AtomicReference<DumpStats> stats = new AtomicReference<>(DumpStats.EMPTY);
+    private final Journal<ID, Entity> journal;
+    private final Fingerprints<ID, Entity> fingerprints;
+    private final Snapshots<ID, Entity> snapshots;
+    private final LinkedBlockingQueue<Consumer<ID>> flushCallbacks = new LinkedBlockingQueue<>();
+    /**
+     * 入库失败放回的次数，用于判断检查点是否全部入库成功
+     */
+    private final LongAdder restoreCount = new LongAdder();
 
-    protected DelayDumpStrategy(DbOperator<ID, Entity> dbOperator) {
+    /**
+     * 超过硬上限时修改线程最多等待的时间，数据库不可用时不永久阻塞
+     */
+    static final long MAX_BLOCK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * 等待同一主键正在进行的入库时的间隔
+     */
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * @param keyFunction   int/long主键转换为long，为null时按对象存储主键
+     * @param batchSize     全部入库时每批的数量
+     * @param triggerCount  未入库数量达到时后台入库
+     * @param maxDirtyCount 未入库数量超过时修改线程等待入库
+     * @param journal       预写日志
+     * @param fingerprints  变化检测
+     * @param snapshots     入库快照
+     */
+    protected DelayDumpStrategy(DbOperator<ID, Entity> dbOperator, @Nullable ToLongFunction<ID> keyFunction, int batchSize,
+                                int triggerCount, int maxDirtyCount, Journal<ID, Entity> journal, Fingerprints<ID, Entity> fingerprints,
+                                Snapshots<ID, Entity> snapshots) {
         super(dbOperator);
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("入库批量大小必须大于0: " + batchSize);
+        }
+        if (triggerCount <= 0 || maxDirtyCount <= 0) {
+            throw new IllegalArgumentException("入库数量阈值必须大于0: " + triggerCount + ", " + maxDirtyCount);
+        }
+        this.cache = IdMap.create(keyFunction);
+        this.inflight = IdMap.create(keyFunction);
+        this.batchSize = batchSize;
+        this.triggerCount = triggerCount;
+        this.maxDirtyCount = maxDirtyCount;
+        this.journal = journal;
+        this.fingerprints = fingerprints;
+        this.snapshots = snapshots;
+        int n = 1;
+        while (n < Runtime.getRuntime().availableProcessors() * 4) {
+            n <<= 1;
+        }
+        this.locks = new StampedLock[n];
+        for (int i = 0; i < n; i++) {
+            locks[i] = new StampedLock();
+        }
         // 系统结束时落库
-        Runtime.getRuntime().addShutdownHook(new Thread(this::flushAll));
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushOnShutdown));
+    }
+
+    private static int spread(Object id) {
+        int h = id.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private int stripe(ID id) {
+        return spread(id) & (locks.length - 1);
+    }
+
+    private StampedLock lock(ID id) {
+        return locks[stripe(id)];
     }
 
     @Override
-    public void update(UpdateInfo<ID, Entity> info) {
-        var writeLock = lock.writeLock();
-        try {
-            var id = info.entity().id();
-            if (cache.containsKey(id)) {
-                var merge = cache.get(id).merge(info);
-                cache.put(id, merge);
-            } else {
-                cache.put(id, info);
+    public void update(Entity entity, long mask) {
+        var id = entity.id();
+        var current = cache.get(id);
+        // 已有未入库的更新时直接合并掩码，不创建对象
+        if (current != null && current.entity() == entity && current.or(mask)) {
+            journal.append(current);
+            return;
+        }
+        var info = new UpdateInfo<>(entity, mask);
+        var added = cache.merge(id, info, UpdateInfo::merge);
+        // 日志记录待入库表中的对象，之后合并的掩码一起写入
+        if (journal.enabled()) {
+            var queued = cache.get(id);
+            journal.append(queued != null ? queued : info);
+        }
+        // 只有新增未入库实体时计数，已有的修改合并后数量不变
+        if (!added) {
+            return;
+        }
+        var count = dirty.incrementAndGet();
+        if (count >= triggerCount) {
+            triggerFlush();
+        }
+        if (count > maxDirtyCount) {
+            awaitBelowCeiling();
+        }
+    }
+
+    /**
+     * 启动后台入库，已有入库在进行时忽略
+     */
+    void triggerFlush() {
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().name("manaslu-dump").start(() -> {
+            int flushed = 0;
+            try {
+                flushed = flushAll();
+            } catch (Throwable ex) {
+                log.error("后台入库异常", ex);
+            } finally {
+                flushing.set(false);
             }
-        } finally {
-            lock.unlockWrite(writeLock);
+            // 入库期间又达到阈值，入库失败时等下次修改再触发
+            if (flushed > 0 && dirty.get() >= triggerCount) {
+                triggerFlush();
+            }
+        });
+    }
+
+    /**
+     * 未入库数量超过硬上限时等待后台入库
+     */
+    private void awaitBelowCeiling() {
+        var deadline = System.nanoTime() + MAX_BLOCK_NANOS;
+        while (dirty.get() > maxDirtyCount) {
+            if (System.nanoTime() - deadline >= 0) {
+                log.warn("未入库数量超过上限, 数量 = {}, 上限 = {}", dirty.get(), maxDirtyCount);
+                return;
+            }
+            triggerFlush();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * 从待入库表移除，之后的更新写入新对象
+     */
+    private UpdateInfo<ID, Entity> take(ID id) {
+        var remove = cache.remove(id);
+        if (remove != null) {
+            remove.claim();
+            dirty.decrementAndGet();
         }
+        return remove;
     }
 
     @Override
     public void flush(ID id) {
-        var writeLock = lock.writeLock();
-        UpdateInfo<ID, Entity> remove = null;
+        var remove = claim(id);
+        if (remove == null) {
+            return;
+        }
         try {
-            remove = cache.remove(id);
-            if (remove == null) {
+            var snapshot = snapshots.capture(remove);
+            // 一直在修改，保留等待下次入库
+            if (snapshot == null) {
+                restore(id, remove);
                 return;
             }
-            dbOperator.update(remove);
-        } catch (Exception e) {
-            if (remove != null) {
-                cache.put(id, remove);
+            var diff = fingerprints.diff(remove.entity(), snapshot);
+            if (diff != null) {
+                dbOperator.update(diff.info());
+                fingerprints.commit(diff, redirty(id));
             }
+        } catch (Exception e) {
+            restore(id, remove);
             log.error("数据入库异常", e);
             throw new ManasluException(e);
         } finally {
-            lock.unlockWrite(writeLock);
+            inflight.remove(id);
         }
+        flushed(id);
+    }
+
+    @Override
+    public void addFlushCallback(Consumer<ID> callback) {
+        flushCallbacks.add(callback);
+    }
+
+    private void flushed(ID id) {
+        for (var callback : flushCallbacks) {
+            try {
+                callback.accept(id);
+            } catch (Exception ex) {
+                log.error("入库回调异常 {}", id, ex);
+            }
+        }
+    }
+
+    /**
+     * 移到入库中表，同一主键正在入库时等待完成
+     *
+     * @return 待入库的数据，没有时为null
+     */
+    @Nullable
+    private UpdateInfo<ID, Entity> claim(ID id) {
+        var lock = lock(id);
+        while (true) {
+            var writeLock = lock.writeLock();
+            try {
+                if (!inflight.containsKey(id)) {
+                    var remove = take(id);
+                    if (remove != null) {
+                        inflight.put(id, remove);
+                    }
+                    return remove;
+                }
+            } finally {
+                lock.unlockWrite(writeLock);
+            }
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    /**
+     * 入库失败时放回，期间产生的新修改一起保留
+     * 必须在从入库中表移除之前调用，保证isDirty不会短暂为false
+     */
+    private void restore(ID id, UpdateInfo<ID, Entity> remove) {
+        restoreCount.increment();
+        var copy = new UpdateInfo<ID, Entity>(remove.entity(), remove.mask());
+        if (cache.merge(id, copy, (current, old) -> current.entity() == old.entity() ? current.merge(old) : current)) {
+            dirty.incrementAndGet();
+        }
+    }
+
+    /**
+     * 入库期间又产生的修改，数据库中的值不一定是计算指纹时的值
+     * 快照时写入的就是计算指纹的值
+     */
+    private long redirty(ID id) {
+        if (snapshots.enabled()) {
+            return 0;
+        }
+        var current = cache.get(id);
+        return current == null ? 0 : current.mask();
+    }
+
+    @Override
+    public boolean isDirty(ID id) {
+        if (inflight.containsKey(id) || cache.containsKey(id)) {
+            return true;
+        }
+        // 可能正在两个表之间移动
+        var lock = lock(id);
+        var readLock = lock.readLock();
+        try {
+            return inflight.containsKey(id) || cache.containsKey(id);
+        } finally {
+            lock.unlockRead(readLock);
+        }
+    }
+
+    @Override
+    public int dirtyCount() {
+        return dirty.get();
+    }
+
+    @Override
+    public DumpStats stats() {
+        return stats.get().counters(fingerprints.suppressedEntityCount(), fingerprints.suppressedFieldCount(), snapshots.retryCount());
     }
 
     @Override
     public void delete(ID id) {
-        var writeLock = lock.writeLock();
-        var remove = cache.remove(id);
+        var remove = claim(id);
         try {
             dbOperator.delete(id);
         } catch (Exception ex) {
             log.error("删除数据库数据失败", ex);
             if (remove != null) {
-                cache.put(id, remove);
+                restore(id, remove);
             }
             throw new ManasluException(ex);
         } finally {
-            lock.unlockWrite(writeLock);
+            if (remove != null) {
+                inflight.remove(id);
+            }
         }
     }
 
-    void flushAll() {
-        var list = cache.keySet().stream().toList();
-        for (ID id : list) {
-            flush(id);
+    @Override
+    public void deleteAll(Collection<ID> ids) {
+        // 与单个删除一样移到入库中表，等待正在进行的入库完成
+        var removes = new HashMap<ID, UpdateInfo<ID, Entity>>();
+        for (ID id : ids) {
+            var remove = claim(id);
+            if (remove != null) {
+                removes.put(id, remove);
+            }
         }
+        try {
+            dbOperator.deleteAll(ids);
+        } catch (Exception ex) {
+            log.error("批量删除数据库数据失败", ex);
+            removes.forEach(this::restore);
+            throw new ManasluException(ex);
+        } finally {
+            removes.keySet().forEach(inflight::remove);
+        }
+    }
+
+    /**
+     * 分批入库，失败的批次放回，等待下次入库
+     *
+     * @return 成功入库的数量
+     */
+    int flushAll() {
+        var checkpoint = beginCheckpoint();
+        var start = System.nanoTime();
+        var list = cache.values().stream().map(e -> e.entity().id()).toList();
+        var flushed = flushIds(list);
+        record(flushed, start);
+        endCheckpoint(checkpoint);
+        return flushed;
+    }
+
+    /**
+     * 开始一轮全部入库，之后的修改写入新的日志文件
+     *
+     * @return 未开启预写日志时为null
+     */
+    @Nullable
+    Checkpoint beginCheckpoint() {
+        if (!journal.enabled()) {
+            return null;
+        }
+        var restores = restoreCount.sum();
+        return new Checkpoint(journal.rotate(), restores);
+    }
+
+    /**
+     * 一轮全部入库结束，期间没有失败且没有其他线程正在入库时，开始前的修改都已入库，删除之前的日志
+     */
+    void endCheckpoint(@Nullable Checkpoint checkpoint) {
+        if (checkpoint != null && restoreCount.sum() == checkpoint.restores() && inflight.isEmpty()) {
+            journal.release(checkpoint.generation());
+        }
+    }
+
+    /**
+     * 全部入库后等待其他线程正在进行的入库，再入库期间跳过的数据
+     */
+    private void flushOnShutdown() {
+        flushAll();
+        var deadline = System.nanoTime() + MAX_BLOCK_NANOS;
+        while (!inflight.isEmpty() && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+        flushAll();
+    }
+
+    /**
+     * 入库按主键哈希分到第slice个时间片的数据
+     *
+     * @param slice  时间片
+     * @param slices 时间片数量
+     */
+    void flushSlice(int slice, int slices) {
+        var start = System.nanoTime();
+        var list = cache.values().stream()
+                .map(e -> e.entity().id())
+                .filter(id -> Math.floorMod(spread(id), slices) == slice)
+                .toList();
+        record(flushIds(list), start);
+    }
+
+    private void record(int flushed, long start) {
+        var nanos = System.nanoTime() - start;
+        stats.updateAndGet(e -> e.record(flushed, nanos));
+        if (flushed > 0) {
+            log.debug("入库完成, 数量 = {}, 耗时 = {}ms", flushed, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    /**
+     * @return 成功入库的数量
+     */
+    private int flushIds(List<ID> list) {
+        int flushed = 0;
+        for (int from = 0; from < list.size(); from += batchSize) {
+            flushed += flushBatch(list.subList(from, Math.min(from + batchSize, list.size())));
+        }
+        return flushed;
+    }
+
+    /**
+     * 移到入库中表后解锁再批量更新，其他线程正在入库的主键留到下次
+     *
+     * @return 成功入库的数量，包括值没有变化不需要写入的
+     */
+    private int flushBatch(List<ID> ids) {
+        var infos = claimAll(ids);
+        if (infos.isEmpty()) {
+            return 0;
+        }
+        // 复制快照超时已经放回的
+        var skipped = new ArrayList<UpdateInfo<ID, Entity>>(0);
+        try {
+            if (!fingerprints.enabled() && !snapshots.enabled()) {
+                dbOperator.updateAll(infos);
+            } else {
+                var diffs = new ArrayList<Fingerprints.Diff<ID, Entity>>(infos.size());
+                for (var info : infos) {
+                    var snapshot = snapshots.capture(info);
+                    // 一直在修改，保留等待下次入库
+                    if (snapshot == null) {
+                        restore(info.entity().id(), info);
+                        skipped.add(info);
+                        continue;
+                    }
+                    var diff = fingerprints.diff(info.entity(), snapshot);
+                    if (diff != null) {
+                        diffs.add(diff);
+                    }
+                }
+                if (!diffs.isEmpty()) {
+                    dbOperator.updateAll(diffs.stream().map(Fingerprints.Diff::info).toList());
+                }
+                for (var diff : diffs) {
+                    fingerprints.commit(diff, redirty(diff.info().entity().id()));
+                }
+            }
+        } catch (Exception e) {
+            infos.stream().filter(info -> !skipped.contains(info)).forEach(info -> restore(info.entity().id(), info));
+            log.error("批量入库异常, 数量 = {}", infos.size(), e);
+            return 0;
+        } finally {
+            infos.forEach(info -> inflight.remove(info.entity().id()));
+        }
+        if (!flushCallbacks.isEmpty()) {
+            infos.stream().filter(info -> !skipped.contains(info)).forEach(info -> flushed(info.entity().id()));
+        }
+        return infos.size() - skipped.size();
+    }
+
+    /**
+     * 按分段顺序加锁，避免与其他批次死锁
+     */
+    private List<UpdateInfo<ID, Entity>> claimAll(List<ID> ids) {
+        var stripes = new BitSet(locks.length);
+        for (ID id : ids) {
+            stripes.set(stripe(id));
+        }
+        var stamps = new long[locks.length];
+        for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+            stamps[i] = locks[i].writeLock();
+        }
+        var infos = new ArrayList<UpdateInfo<ID, Entity>>(ids.size());
+        try {
+            for (ID id : ids) {
+                if (inflight.containsKey(id)) {
+                    continue;
+                }
+                var remove = take(id);
+                if (remove != null) {
+                    inflight.put(id, remove);
+                    infos.add(remove);
+                }
+            }
+            return infos;
+        } finally {
+            for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+                locks[i].unlockWrite(stamps[i]);
+            }
+        }
+    }
+
+    /**
+     * @param generation 开始时切换到的日志代
+     * @param restores   开始时入库失败的次数
+     */
+    record Checkpoint(long generation, long restores) {
     }
 }
 
 /**
  * 定时触发存储
+ * 间隔分为SLICES个时间片，每个时间片入库主键哈希对应的部分数据，每个修改最多在一个间隔后入库，避免集中入库
+ * 不同实体类型的起始时间错开
  */
 @Slf4j
 sealed class IntervalDumpStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> extends DelayDumpStrategy<ID, Entity>
         permits CountIntervalDumpStrategy {
 
+    /**
+     * 每个间隔的时间片数量
+     */
+    static final int SLICES = 10;
+    /**
+     * 已创建的数量，用于错开起始时间
+     */
+    private static final AtomicInteger PHASE = new AtomicInteger();
+
+    private final int slices;
+    /**
+     * 下一个时间片，只在定时任务中访问
+     */
+    private int slice;
+    /**
+     * 当前一轮时间片的检查点，只在定时任务中访问
+     */
+    @Nullable
+    private Checkpoint checkpoint;
+
     /**
      * @param intervalTimeMs     间隔时间
      * @param threadPoolExecutor 定时器
      */
-    IntervalDumpStrategy(long intervalTimeMs, DbOperator<ID, Entity> dbOperator, ScheduledExecutorService threadPoolExecutor) {
-        super(dbOperator);
-        threadPoolExecutor.schedule(this::flushAll, intervalTimeMs, TimeUnit.MILLISECONDS);
+    IntervalDumpStrategy(long intervalTimeMs, DbOperator<ID, Entity> dbOperator, @Nullable ToLongFunction<ID> keyFunction, int batchSize,
+                         int maxDirtyCount, Journal<ID, Entity> journal, Fingerprints<ID, Entity> fingerprints,
+                         Snapshots<ID, Entity> snapshots, ScheduledExecutorService threadPoolExecutor) {
+        this(intervalTimeMs, Integer.MAX_VALUE, dbOperator, keyFunction, batchSize, maxDirtyCount, journal, fingerprints, snapshots, threadPoolExecutor);
     }
 
+    IntervalDumpStrategy(long intervalTimeMs, int triggerCount, DbOperator<ID, Entity> dbOperator, @Nullable ToLongFunction<ID> keyFunction,
+                         int batchSize, int maxDirtyCount, Journal<ID, Entity> journal, Fingerprints<ID, Entity> fingerprints,
+                         Snapshots<ID, Entity> snapshots, ScheduledExecutorService threadPoolExecutor) {
+        super(dbOperator, keyFunction, batchSize, triggerCount, maxDirtyCount, journal, fingerprints, snapshots);
+        if (intervalTimeMs <= 0) {
+            throw new IllegalArgumentException("入库间隔必须大于0: " + intervalTimeMs);
+        }
+        this.slices = (int) Math.min(SLICES, intervalTimeMs);
+        var tick = intervalTimeMs / slices;
+        // 按黄金分割错开，任意数量的类型都能大致均匀分布在一个时间片内
+        var phase = (long) (tick * ((PHASE.getAndIncrement() * 0.6180339887498949) % 1));
+        threadPoolExecutor.scheduleAtFixedRate(this::tick, tick + phase, tick, TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        // 异常会取消之后的定时执行
+        try {
+            var current = slice;
+            slice = (current + 1) % slices;
+            if (current == 0) {
+                checkpoint = beginCheckpoint();
+            }
+            flushSlice(current, slices);
+            if (current == slices - 1) {
+                endCheckpoint(checkpoint);
+                checkpoint = null;
+            }
+        } catch (Throwable ex) {
+            log.error("定时入库异常", ex);
+        }
+    }
 }
 
 /**
  * 当满足达到更新数量或者定时时，触发存储
  */
-@Slf4j
 final class CountIntervalDumpStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> extends IntervalDumpStrategy<ID, Entity> {
 
-    final int maxSize;
-    final AtomicInteger counter = new AtomicInteger(0);
-
     /**
      * @param maxSize 最大数量
      */
-    CountIntervalDumpStrategy(long intervalTimeMs, int maxSize, DbOperator<ID, Entity> dbOperator, ScheduledExecutorService threadPoolExecutor) {
-        super(intervalTimeMs, dbOperator, threadPoolExecutor);
-        this.maxSize = maxSize;
-    }
-
-    @Override
-    public void update(UpdateInfo<ID, Entity> info) {
-        super.update(info);
-        // 触发入库
-        if (counter.get() >= maxSize) {
-            flushAll();
-        }
-    }
-
-    @Override
-    void flushAll() {
-        super.flushAll();
-        counter.set(0);
+    CountIntervalDumpStrategy(long intervalTimeMs, int maxSize, DbOperator<ID, Entity> dbOperator, @Nullable ToLongFunction<ID> keyFunction,
+                              int batchSize, int maxDirtyCount, Journal<ID, Entity> journal, Fingerprints<ID, Entity> fingerprints,
+                              Snapshots<ID, Entity> snapshots, ScheduledExecutorService threadPoolExecutor) {
+        super(intervalTimeMs, maxSize, dbOperator, keyFunction, batchSize, maxDirtyCount, journal, fingerprints, snapshots, threadPoolExecutor);
     }
 }
 
 /**
  * 当满足达到更新数量触发存储
  */
-@Slf4j
 final class CountDumpStrategy<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> extends DelayDumpStrategy<ID, Entity> {
-    final int maxSize;
-    final AtomicInteger counter = new AtomicInteger(0);
 
     /**
      * @param maxSize 最大数量
      */
-    CountDumpStrategy(int maxSize, DbOperator<ID, Entity> dbOperator) {
-        super(dbOperator);
-        this.maxSize = maxSize;
-    }
-
-    @Override
-    public void update(UpdateInfo<ID, Entity> info) {
-        super.update(info);
-        // 触发入库
-        if (counter.get() >= maxSize) {
-            flushAll();
-        }
-    }
-
-    @Override
-    void flushAll() {
-        super.flushAll();
-        counter.set(0);
+    CountDumpStrategy(int maxSize, DbOperator<ID, Entity> dbOperator, @Nullable ToLongFunction<ID> keyFunction, int batchSize, int maxDirtyCount,
+                      Journal<ID, Entity> journal, Fingerprints<ID, Entity> fingerprints, Snapshots<ID, Entity> snapshots) {
+        super(dbOperator, keyFunction, batchSize, maxSize, maxDirtyCount, journal, fingerprints, snapshots);
     }
 }
-
@@ -3,7 +3,7 @@ package org.manaslu.cache.core;
 import com.google.auto.service.AutoService;
 import org.manaslu.cache.core.annotations.Enhance;
 import org.manaslu.cache.core.annotations.EnhanceEntity;
-import org.manaslu.cache.core.annotations.Id;
+import org.manaslu.cache.core.annotations.Index;
 import org.manaslu.cache.core.annotations.SubEnhanceEntity;
 
 import javax.annotation.processing.*;
@@ -81,9 +81,11 @@ class EntityBuilder {
                 .append(buildAnnotation(element, ""))
                 .append("public class ").append(element.getSimpleName().toString()).append("$Proxy extends ").append(name)
                 .append(" {\n\n")
-                .append(buildAllFieldSave(element))
-                .append(buildConstruct(name))
-                .append(buildOverrideMethod(element, enclosedElements))
+                .append(buildConstruct(name));
+        var masks = new StringBuilder();
+        var methods = buildOverrideMethod(element, enclosedElements, masks);
+        sb.append(masks).append("\n")
+                .append(methods)
                 .append("}\n");
         try {
             JavaFileObject source = filer.createSourceFile(name + "$Proxy");
@@ -188,10 +190,53 @@ class EntityBuilder {
         return true;
     }
 
+    /**
+     * 修改了@Index字段时更新索引
+     *
+     * @param properties 修改的字段，带引号
+     * @param all        是否全量更新
+     * @param masks      常量定义，修改的索引字段掩码同样生成常量
+     */
+    private String buildIndexUpdate(Element classElement, Set<String> properties, boolean all, StringBuilder masks) {
+        var indexFields = classElement.getEnclosedElements().stream()
+                .filter(e -> e.getKind() == ElementKind.FIELD)
+                .filter(e -> e.getAnnotationMirrors().stream().anyMatch(anno -> anno.getAnnotationType().toString().equals(Index.class.getCanonicalName())))
+                .map(e -> "\"" + e.getSimpleName().toString() + "\"")
+                .filter(e -> all || properties.contains(e))
+                .collect(Collectors.toCollection(TreeSet::new));
+        if (indexFields.isEmpty()) {
+            return "";
+        }
+        return String.format("\t\tindexes.update(this, %s);\n", buildMask(classElement, indexFields, masks));
+    }
+
+    /**
+     * 更新字段掩码的静态常量，类初始化时计算一次，修改时不再创建集合
+     *
+     * @param properties 修改的字段，带引号
+     * @param masks      常量定义
+     * @return 常量名
+     */
+    private String buildMask(Element classElement, Set<String> properties, StringBuilder masks) {
+        var value = String.format(" = FieldMask.of(%s.class, %s);", classElement, String.join(", ", properties));
+        // 相同字段复用已有常量
+        var lines = masks.toString().lines().toList();
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).endsWith(value)) {
+                return "_MASK_" + i;
+            }
+        }
+        var name = "_MASK_" + lines.size();
+        masks.append("\tprivate static final long ").append(name).append(value).append("\n");
+        return name;
+    }
+
     /**
      * 覆盖方法
+     *
+     * @param masks 生成的掩码常量
      */
-    private String buildOverrideMethod(Element classElement, List<ExecutableElement> elements) {
+    private String buildOverrideMethod(Element classElement, List<ExecutableElement> elements, StringBuilder masks) {
         var sb = new StringBuilder();
         for (ExecutableElement element : elements) {
             var simpleName = element.getSimpleName();
@@ -220,41 +265,23 @@ class EntityBuilder {
             }
 
             sb.append(") {\n");
-            if (returnType.getKind() == TypeKind.VOID) {
-                sb.append("\t\t").append("_raw.").append(simpleName).append("(")
-                        .append(params)
-                        .append(");\n");
-                var classAttributes = new HashMap<String, String>();
-                var set = new HashSet<String>();
-                if (methodHasEnhance(element, set)) {
-                    if (classHasEntity(classElement, classAttributes)) {
-                        var updateType = classAttributes.get("updateType");
-                        if ("ALL".equalsIgnoreCase(updateType)) {
-                            sb.append("\t\tdumpStrategy.update(new UpdateInfo(_raw, _dumpFields));\n");
-                        } else {
-                            var ps = String.join(", ", set);
-                            sb.append(String.format("\t\tdumpStrategy.update(new UpdateInfo(_raw, Set.of(%s)));\n", ps));
-                        }
-                    }
+            var call = "_raw." + simpleName + "(" + params + ");\n";
+            var isVoid = returnType.getKind() == TypeKind.VOID;
+            var classAttributes = new HashMap<String, String>();
+            var set = new HashSet<String>();
+            if (methodHasEnhance(element, set) && classHasEntity(classElement, classAttributes)) {
+                sb.append(buildMutation("_raw", isVoid ? null : returnType.toString(), call));
+                var updateType = classAttributes.get("updateType");
+                sb.append(buildIndexUpdate(classElement, set, "ALL".equalsIgnoreCase(updateType), masks));
+                if ("ALL".equalsIgnoreCase(updateType)) {
+                    sb.append("\t\t((DumpStrategy) dumpStrategy).update(_raw, FieldMask.ALL);\n");
+                } else {
+                    sb.append(String.format("\t\t((DumpStrategy) dumpStrategy).update(_raw, %s);\n", buildMask(classElement, set, masks)));
                 }
-
             } else {
-                sb.append("\t\t").append("var r = _raw.").append(simpleName).append("(")
-                        .append(params)
-                        .append(");\n");
-                var classAttributes = new HashMap<String, String>();
-                var set = new HashSet<String>();
-                if (methodHasEnhance(element, set)) {
-                    if (classHasEntity(classElement, classAttributes)) {
-                        var updateType = classAttributes.get("updateType");
-                        if ("ALL".equalsIgnoreCase(updateType)) {
-                            sb.append("\t\tdumpStrategy.update(new UpdateInfo(_raw, _dumpFields));\n");
-                        } else {
-                            var ps = String.join(", ", set);
-                            sb.append(String.format("\t\tdumpStrategy.update(new UpdateInfo(_raw, Set.of(%s)));\n", ps));
-                        }
-                    }
-                }
+                sb.append("\t\t").append(isVoid ? "" : "var r = ").append(call);
+            }
+            if (!isVoid) {
                 sb.append("\t\treturn r;\n");
             }
             sb.append("\t}\n\n");
@@ -262,6 +289,27 @@ class EntityBuilder {
         return sb.toString();
     }
 
+    /**
+     * 修改前后更新实体的修改序号，入库快照据此判断复制期间没有修改
+     *
+     * @param entity     实体变量
+     * @param returnType 返回类型，void时为null
+     * @param call       调用原始方法
+     */
+    static String buildMutation(String entity, String returnType, String call) {
+        var sb = new StringBuilder();
+        if (returnType != null) {
+            sb.append("\t\t").append(returnType).append(" r;\n");
+        }
+        sb.append("\t\t").append(entity).append(".beginMutation();\n")
+                .append("\t\ttry {\n")
+                .append("\t\t\t").append(returnType != null ? "r = " : "").append(call)
+                .append("\t\t} finally {\n")
+                .append("\t\t\t").append(entity).append(".endMutation();\n")
+                .append("\t\t}\n");
+        return sb.toString();
+    }
+
     /**
      * 新增构造方法
      */
@@ -291,18 +339,6 @@ class EntityBuilder {
                 """, name, simpleName, name);
     }
 
-    /**
-     * 创建类的所有普通属性（除ID）
-     */
-    private String buildAllFieldSave(Element element) {
-        var dumpFields = element.getEnclosedElements().stream()
-                .filter(e -> e.getKind() == ElementKind.FIELD)
-                .filter(e -> !e.getModifiers().contains(Modifier.TRANSIENT))
-                .filter(e -> e.getAnnotationMirrors().stream().noneMatch(anno -> anno.getAnnotationType().toString().equals(Id.class.getCanonicalName())))
-                .map(e -> "\"" + e.getSimpleName().toString() + "\"")
-                .collect(Collectors.joining(", "));
-        return String.format("\tprivate final Set<String> _dumpFields = Set.of(%s);\n", dumpFields);
-    }
 }
 
 class SubEntityBuilder {
@@ -447,21 +483,16 @@ class SubEntityBuilder {
             }
 
             sb.append(") {\n");
-            if (returnType.getKind() == TypeKind.VOID) {
-                sb.append("\t\t").append("_raw.").append(simpleName).append("(")
-                        .append(params)
-                        .append(");\n");
-                if (methodHasEnhance(element)) {
-                    sb.append("\t\tthis._parent.dumpStrategy().update(new UpdateInfo(this._parent.entity(), _dumpFields));\n");
-                }
-
+            var call = "_raw." + simpleName + "(" + params + ");\n";
+            var isVoid = returnType.getKind() == TypeKind.VOID;
+            if (methodHasEnhance(element)) {
+                // 子实体的修改也是所属实体的修改
+                sb.append(EntityBuilder.buildMutation("this._parent.entity()", isVoid ? null : returnType.toString(), call));
+                sb.append("\t\t((DumpStrategy) this._parent.dumpStrategy()).update(this._parent.entity(), _dumpMask);\n");
             } else {
-                sb.append("\t\t").append("var r = _raw.").append(simpleName).append("(")
-                        .append(params)
-                        .append(");\n");
-                if (methodHasEnhance(element)) {
-                    sb.append("\t\tthis._parent.dumpStrategy().update(new UpdateInfo(this._parent.entity(), _dumpFields));\n");
-                }
+                sb.append("\t\t").append(isVoid ? "" : "var r = ").append(call);
+            }
+            if (!isVoid) {
                 sb.append("\t\treturn r;\n");
             }
             sb.append("\t}\n\n");
@@ -476,13 +507,13 @@ class SubEntityBuilder {
         var simpleName = name.substring(name.lastIndexOf('.') + 1);
         return String.format("""
                     public final %s _raw;
-                    private final Set<String> _dumpFields;
+                    private final long _dumpMask;
                     private final AbstractEntity<?> _parent;
                     
                     public %s$Proxy(AbstractEntity<?> _parent, %s _raw, String updateName) {
                         this._raw = _raw;
                         this._parent = _parent;
-                        this._dumpFields = Set.of(updateName);
+                        this._dumpMask = FieldMask.of(_parent.entity().getClass(), updateName);
                     }
                 """, name, simpleName, name);
     }
@@ -18,17 +18,26 @@ final class EntityEnhanceCreator {
      * 创建增强实体
      */
     <ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> Entity create(Entity entity, CacheStrategy<ID, ? extends AbstractEntity<ID>> cacheStrategy,
-                                                                                 DumpStrategy<ID, ? extends AbstractEntity<ID>> dumpStrategy) {
-        return create(null, entity, cacheStrategy, dumpStrategy);
+                                                                                 DumpStrategy<ID, ? extends AbstractEntity<ID>> dumpStrategy,
+                                                                                 EntityIndexes<ID, ? extends AbstractEntity<ID>> indexes) {
+        return create(null, entity, cacheStrategy, dumpStrategy, indexes);
     }
 
     <ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> Entity create(@Nullable ID id, Entity entity, CacheStrategy<ID, ? extends AbstractEntity<ID>> cacheStrategy,
-                                                                                 DumpStrategy<ID, ? extends AbstractEntity<ID>> dumpStrategy) {
+                                                                                 DumpStrategy<ID, ? extends AbstractEntity<ID>> dumpStrategy,
+                                                                                 EntityIndexes<ID, ? extends AbstractEntity<ID>> indexes) {
         var newEnhance = entityTypeManager.newEnhance(id, entity);
-        newEnhance.initialize(cacheStrategy, dumpStrategy);
+        newEnhance.initialize(cacheStrategy, dumpStrategy, indexes);
         return newEnhance;
     }
 
+    /**
+     * 把原始对象的字段复制到增强对象，子实体按增强对象重新增强
+     */
+    <ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> void refresh(Entity enhanced, Entity raw) {
+        entityTypeManager.refresh(enhanced, raw);
+    }
+
 }
 
 
@@ -0,0 +1,330 @@
+package org.manaslu.cache.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.manaslu.cache.core.exception.ManasluException;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存数据的二级索引
+ * 数据放入缓存时建立索引，移出缓存时删除索引，@Enhance方法修改索引字段时更新索引
+ * 查询无锁，同一主键的索引更新串行执行
+ */
+public final class EntityIndexes<ID extends Comparable<ID>, E extends AbstractEntity<ID>> {
+
+    private static final EntityIndexes<?, ?> EMPTY = new EntityIndexes<>(Map.of(), new long[0]);
+
+    private final Map<String, SecondaryIndex<ID, E>> indexes;
+    /**
+     * 按索引顺序的字段掩码位，不是数据库字段时为0
+     */
+    private final long[] bits;
+
+    /**
+     * 已建立索引的数据及其索引值
+     */
+    private final ConcurrentHashMap<ID, Indexed<E>> entries = new ConcurrentHashMap<>();
+
+    private EntityIndexes(Map<String, SecondaryIndex<ID, E>> indexes, long[] bits) {
+        this.indexes = indexes;
+        this.bits = bits;
+    }
+
+    static <ID extends Comparable<ID>, E extends AbstractEntity<ID>> EntityIndexes<ID, E> of(EntityTypeInfo info) {
+        if (info.indexes().isEmpty()) {
+            return empty();
+        }
+        var map = new LinkedHashMap<String, SecondaryIndex<ID, E>>();
+        var bits = new long[info.indexes().size()];
+        info.indexes().forEach((name, index) -> {
+            bits[map.size()] = info.fieldBit(index.field().getName());
+            map.put(name, index.unique()
+                    ? new UniqueIndex<>(name, index.field())
+                    : new MultiIndex<>(index.field()));
+        });
+        return new EntityIndexes<>(Collections.unmodifiableMap(map), bits);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <ID extends Comparable<ID>, E extends AbstractEntity<ID>> EntityIndexes<ID, E> empty() {
+        return (EntityIndexes<ID, E>) EMPTY;
+    }
+
+    boolean isEmpty() {
+        return indexes.isEmpty();
+    }
+
+    /**
+     * 建立索引，相同主键的旧数据索引会被替换
+     */
+    void add(E entity) {
+        entries.compute(entity.id(), (id, old) -> {
+            if (old != null) {
+                unindex(old);
+            }
+            var keys = new Object[indexes.size()];
+            int i = 0;
+            for (var index : indexes.values()) {
+                keys[i] = index.keyOf(entity);
+                if (keys[i] != null) {
+                    index.put(keys[i], entity);
+                }
+                i++;
+            }
+            return new Indexed<>(entity, keys);
+        });
+    }
+
+    /**
+     * 删除索引，只删除同一个对象的索引
+     */
+    void remove(E entity) {
+        entries.computeIfPresent(entity.id(), (id, old) -> {
+            if (old.entity != entity) {
+                return old;
+            }
+            unindex(old);
+            return null;
+        });
+    }
+
+    /**
+     * 字段修改后更新索引，由增强类在修改的线程上调用
+     * 先无锁比较索引值，没有变化时直接返回；有变化时才加该主键的锁更新
+     *
+     * @param entity 增强对象
+     * @param mask   修改的索引字段掩码，生成的增强类中为常量
+     */
+    @SuppressWarnings("unchecked")
+    public void update(AbstractEntity<?> entity, long mask) {
+        var e = (E) entity;
+        var current = entries.get(e.id());
+        // 不在缓存中的数据没有索引
+        if (current == null || current.entity != e || !changed(current, mask)) {
+            return;
+        }
+        entries.computeIfPresent(e.id(), (id, old) -> {
+            if (old.entity != e) {
+                return old;
+            }
+            int i = 0;
+            for (var index : indexes.values()) {
+                if (matches(i, mask)) {
+                    var key = index.keyOf(e);
+                    if (!Objects.equals(key, old.keys[i])) {
+                        if (old.keys[i] != null) {
+                            index.remove(old.keys[i], e);
+                        }
+                        if (key != null) {
+                            index.put(key, e);
+                        }
+                        old.keys[i] = key;
+                    }
+                }
+                i++;
+            }
+            return old;
+        });
+    }
+
+    private boolean matches(int i, long mask) {
+        return bits[i] == 0 || (mask & bits[i]) != 0;
+    }
+
+    /**
+     * 修改的索引字段是否有值变化，索引值只作比较，以加锁后的结果为准
+     */
+    private boolean changed(Indexed<E> indexed, long mask) {
+        int i = 0;
+        for (var index : indexes.values()) {
+            if (matches(i, mask) && !Objects.equals(index.keyOf(indexed.entity), indexed.keys[i])) {
+                return true;
+            }
+            i++;
+        }
+        return false;
+    }
+
+    /**
+     * 后台刷新后重新计算所有索引
+     */
+    void refresh(E entity) {
+        entries.computeIfPresent(entity.id(), (id, old) -> {
+            if (old.entity != entity) {
+                return old;
+            }
+            unindex(old);
+            var keys = new Object[indexes.size()];
+            int i = 0;
+            for (var index : indexes.values()) {
+                keys[i] = index.keyOf(entity);
+                if (keys[i] != null) {
+                    index.put(keys[i], entity);
+                }
+                i++;
+            }
+            return new Indexed<>(entity, keys);
+        });
+    }
+
+    private void unindex(Indexed<E> indexed) {
+        int i = 0;
+        for (var index : indexes.values()) {
+            if (indexed.keys[i] != null) {
+                index.remove(indexed.keys[i], indexed.entity);
+            }
+            i++;
+        }
+    }
+
+    /**
+     * 按索引查询
+     *
+     * @param name 索引名
+     * @param key  索引值，类型需与字段类型一致
+     */
+    @Nonnull
+    List<E> find(String name, Object key) {
+        return index(name).find(key);
+    }
+
+    @Nonnull
+    Optional<E> findOne(String name, Object key) {
+        return index(name).findOne(key);
+    }
+
+    private SecondaryIndex<ID, E> index(String name) {
+        var index = indexes.get(name);
+        if (index == null) {
+            throw new ManasluException("不存在的索引: " + name);
+        }
+        return index;
+    }
+
+    /**
+     * @param entity 数据
+     * @param keys   按索引顺序的索引值，同一主键的更新串行执行
+     */
+    private record Indexed<E>(E entity, Object[] keys) {
+    }
+}
+
+/**
+ * 单个索引
+ */
+sealed interface SecondaryIndex<ID extends Comparable<ID>, E extends AbstractEntity<ID>> permits UniqueIndex, MultiIndex {
+
+    ManasluField field();
+
+    void put(Object key, E entity);
+
+    void remove(Object key, E entity);
+
+    List<E> find(Object key);
+
+    Optional<E> findOne(Object key);
+
+    default Object keyOf(E entity) {
+        try {
+            return field().get(entity);
+        } catch (Exception ex) {
+            throw new ManasluException("读取索引字段失败: " + field().getName(), ex);
+        }
+    }
+}
+
+/**
+ * 唯一索引，冲突时保留最新的数据
+ */
+@Slf4j
+final class UniqueIndex<ID extends Comparable<ID>, E extends AbstractEntity<ID>> implements SecondaryIndex<ID, E> {
+
+    private final String name;
+    private final ManasluField field;
+    private final ConcurrentHashMap<Object, E> map = new ConcurrentHashMap<>();
+
+    UniqueIndex(String name, ManasluField field) {
+        this.name = name;
+        this.field = field;
+    }
+
+    @Override
+    public ManasluField field() {
+        return field;
+    }
+
+    @Override
+    public void put(Object key, E entity) {
+        var old = map.put(key, entity);
+        if (old != null && old != entity) {
+            log.warn("唯一索引冲突 {} {}: {}, {}", name, key, old.id(), entity.id());
+        }
+    }
+
+    @Override
+    public void remove(Object key, E entity) {
+        map.computeIfPresent(key, (k, v) -> v == entity ? null : v);
+    }
+
+    @Override
+    public List<E> find(Object key) {
+        var e = map.get(key);
+        return e == null ? List.of() : List.of(e);
+    }
+
+    @Override
+    public Optional<E> findOne(Object key) {
+        return Optional.ofNullable(map.get(key));
+    }
+}
+
+/**
+ * 非唯一索引
+ */
+final class MultiIndex<ID extends Comparable<ID>, E extends AbstractEntity<ID>> implements SecondaryIndex<ID, E> {
+
+    private final ManasluField field;
+    private final ConcurrentHashMap<Object, ConcurrentHashMap<ID, E>> map = new ConcurrentHashMap<>();
+
+    MultiIndex(ManasluField field) {
+        this.field = field;
+    }
+
+    @Override
+    public ManasluField field() {
+        return field;
+    }
+
+    @Override
+    public void put(Object key, E entity) {
+        map.compute(key, (k, v) -> {
+            if (v == null) {
+                v = new ConcurrentHashMap<>();
+            }
+            v.put(entity.id(), entity);
+            return v;
+        });
+    }
+
+    @Override
+    public void remove(Object key, E entity) {
+        map.computeIfPresent(key, (k, v) -> {
+            v.computeIfPresent(entity.id(), (id, old) -> old == entity ? null : old);
+            return v.isEmpty() ? null : v;
+        });
+    }
+
+    @Override
+    public List<E> find(Object key) {
+        var v = map.get(key);
+        return v == null ? List.of() : List.copyOf(v.values());
+    }
+
+    @Override
+    public Optional<E> findOne(Object key) {
+        var v = map.get(key);
+        return v == null ? Optional.empty() : v.values().stream().findAny();
+    }
+}
@@ -1,5 +1,8 @@
 package org.manaslu.cache.core;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -9,11 +12,49 @@ import java.util.Map;
  * @param id           主键
  * @param normalFields 普通字段
  * @param subEntities  所有子实体
+ * @param indexes      二级索引
  */
 public record EntityTypeInfo(Class<? extends AbstractEntity<?>> rawClass, String database, String table,
                              ManasluField id, Map<String, ManasluField> normalFields,
-                             Map<Class<?>, SubEntityTypeInfo> subEntities) {
+                             Map<Class<?>, SubEntityTypeInfo> subEntities, Map<String, IndexTypeInfo> indexes) {
+
+    /**
+     * 普通字段在更新掩码中对应的位
+     *
+     * @see UpdateInfo#isUpdated(long)
+     */
+    public long fieldBit(String field) {
+        return FieldMask.bit(rawClass, field);
+    }
+
+    /**
+     * 掩码每一位对应的普通字段，超过63个字段时最后一位对应多个字段，没有字段的位为null
+     */
+    ManasluField[][] fieldsByBit() {
+        var bits = new HashMap<Integer, List<ManasluField>>();
+        int size = 0;
+        for (var e : normalFields.entrySet()) {
+            var bit = fieldBit(e.getKey());
+            if (bit == 0) {
+                continue;
+            }
+            var index = Long.numberOfTrailingZeros(bit);
+            bits.computeIfAbsent(index, k -> new ArrayList<>()).add(e.getValue());
+            size = Math.max(size, index + 1);
+        }
+        var fields = new ManasluField[size][];
+        bits.forEach((index, list) -> fields[index] = list.toArray(ManasluField[]::new));
+        return fields;
+    }
 
     public record SubEntityTypeInfo(Class<?> rawClass, Map<String, ManasluField> fields) {
     }
+
+    /**
+     * @param name   索引名
+     * @param field  索引字段
+     * @param unique 是否唯一
+     */
+    public record IndexTypeInfo(String name, ManasluField field, boolean unique) {
+    }
 }
@@ -3,6 +3,7 @@ package org.manaslu.cache.core;
 import lombok.extern.slf4j.Slf4j;
 import org.manaslu.cache.core.annotations.Entity;
 import org.manaslu.cache.core.annotations.Id;
+import org.manaslu.cache.core.annotations.Index;
 import org.manaslu.cache.core.annotations.SubEntity;
 
 import java.lang.invoke.MethodHandle;
@@ -61,6 +62,16 @@ public class EntityTypeManager {
         return (E) entityInfo.newObject(this, entity, id);
     }
 
+    /**
+     * 把原始对象的字段复制到增强对象
+     */
+    <ID extends Comparable<ID>, E extends AbstractEntity<ID>> void refresh(E enhanced, E raw) {
+        if (!registerTypes.containsKey(raw.getClass())) {
+            throw new IllegalArgumentException("出现为注册类型" + raw.getClass().getName());
+        }
+        registerTypes.get(raw.getClass()).copy(this, enhanced, raw);
+    }
+
     @SuppressWarnings("unchecked")
     <ID extends Comparable<ID>, E extends AbstractEntity<ID>> Class<E> getProxyClass(Class<E> rawClass) {
         if (!registerTypes.containsKey(rawClass)) {
@@ -79,7 +90,7 @@ public class EntityTypeManager {
         }
         var entityInfo = registerTypes.get(type);
         Map<Class<?>, EntityTypeInfo.SubEntityTypeInfo> subs = registerSubTypes.values().stream().collect(Collectors.toUnmodifiableMap(e -> e.rawClass, e -> new EntityTypeInfo.SubEntityTypeInfo(e.rawClass, e.properties.stream().collect(Collectors.toUnmodifiableMap(ManasluField::getName, f -> f)))));
-        return new EntityTypeInfo(entityInfo.rawClass, entityInfo.database, entityInfo.table, entityInfo.idField, entityInfo.properties.stream().collect(Collectors.toUnmodifiableMap(ManasluField::getName, e -> e)), subs);
+        return new EntityTypeInfo(entityInfo.rawClass, entityInfo.database, entityInfo.table, entityInfo.idField, entityInfo.properties.stream().collect(Collectors.toUnmodifiableMap(ManasluField::getName, e -> e)), subs, entityInfo.indexes);
     }
 
     /**
@@ -103,6 +114,10 @@ public class EntityTypeManager {
         final List<ManasluField> properties;
 
         final List<ManasluField> enhancedProperties;
+        /**
+         * 二级索引
+         */
+        final Map<String, EntityTypeInfo.IndexTypeInfo> indexes;
         final MethodHandles.Lookup selfLookup;
 
         EntityInfo(EntityTypeManager manager, Class<? extends AbstractEntity<?>> clazz) throws Throwable {
@@ -122,6 +137,7 @@ public class EntityTypeManager {
             }
             var fields = new ArrayList<ManasluField>();
             var enhancedFields = new ArrayList<ManasluField>();
+            var indexInfos = new LinkedHashMap<String, EntityTypeInfo.IndexTypeInfo>();
             ManasluField id = null;
             for (Field declaredField : clazz.getDeclaredFields()) {
                 var modifiers = declaredField.getModifiers();
@@ -136,8 +152,18 @@ public class EntityTypeManager {
                         } else {
                             throw new IllegalStateException("重复主键");
                         }
+                        if (declaredField.isAnnotationPresent(Index.class)) {
+                            throw new IllegalStateException("主键不能作为索引" + clazz.getName());
+                        }
                     } else {
                         var proxyField = new ProxyField(selfLookup, declaredField, LOOKUP.findVarHandle(proxyClass, "_raw", clazz));
+                        var index = declaredField.getAnnotation(Index.class);
+                        if (index != null) {
+                            var indexName = "".equals(index.value()) ? declaredField.getName() : index.value();
+                            if (indexInfos.put(indexName, new EntityTypeInfo.IndexTypeInfo(indexName, proxyField, index.unique())) != null) {
+                                throw new IllegalStateException("重复索引" + indexName);
+                            }
+                        }
                         if (declaredField.getType().isAnnotationPresent(SubEntity.class)) {
                             manager.registerSubType(declaredField.getType());
 
@@ -155,6 +181,7 @@ public class EntityTypeManager {
             this.idField = id;
             this.properties = Collections.unmodifiableList(fields);
             this.enhancedProperties = Collections.unmodifiableList(enhancedFields);
+            this.indexes = Collections.unmodifiableMap(indexInfos);
         }
 
         @SuppressWarnings("unchecked")
@@ -191,6 +218,24 @@ public class EntityTypeManager {
                 throw new IllegalStateException("创建增强对象失败", ex);
             }
         }
+
+        /**
+         * 复制数据库字段，子实体以目标增强对象为父对象重新增强
+         */
+        void copy(EntityTypeManager manager, AbstractEntity<?> enhanced, AbstractEntity<?> raw) {
+            try {
+                for (var property : properties) {
+                    var value = property.get(raw);
+                    if (enhancedProperties.contains(property)) {
+                        var subEntityInfo = manager.registerSubTypes.get(property.getType());
+                        value = subEntityInfo.newObject(manager, enhanced, value, property.getName());
+                    }
+                    property.set(enhanced, value);
+                }
+            } catch (Throwable ex) {
+                throw new IllegalStateException("刷新增强对象失败", ex);
+            }
+        }
     }
 
     static class SubEntityInfo {
@@ -0,0 +1,175 @@
+package org.manaslu.cache.core;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 估算实体占用的堆内存(字节)，用于按大小淘汰
+ * 按字段类型累加，集合只抽样前SAMPLE_SIZE个元素再按数量推算，不追求精确
+ * 首次放入缓存时计算并记录在实体上，延迟入库成功或后台刷新后重新计算
+ */
+final class EntityWeigher<Entity extends AbstractEntity<?>> {
+
+    private static final int OBJECT_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int SAMPLE_SIZE = 16;
+    private static final int MAX_DEPTH = 8;
+
+    /**
+     * 非实体类型的字段，按类型缓存
+     */
+    private static final Map<Class<?>, List<Field>> FIELDS = new ConcurrentHashMap<>();
+
+    private final EntityTypeInfo info;
+
+    EntityWeigher(EntityTypeInfo info) {
+        this.info = info;
+    }
+
+    /**
+     * 获取权重，首次调用时计算并记录在实体上
+     */
+    int weigh(Entity entity) {
+        var weight = entity.cacheWeight;
+        if (weight == 0) {
+            weight = (int) Math.min(Integer.MAX_VALUE, Math.max(1, estimate(entity)));
+            entity.cacheWeight = weight;
+        }
+        return weight;
+    }
+
+    /**
+     * 重新计算并记录在实体上
+     *
+     * @return 之前的权重
+     */
+    int reweigh(Entity entity) {
+        var old = entity.cacheWeight;
+        entity.cacheWeight = (int) Math.min(Integer.MAX_VALUE, Math.max(1, estimate(entity)));
+        return old;
+    }
+
+    long estimate(Entity entity) {
+        long size = OBJECT_HEADER + (long) REFERENCE * (info.normalFields().size() + 1);
+        try {
+            size += sizeOf(info.id().get(entity), 0);
+            for (var field : info.normalFields().values()) {
+                size += sizeOf(field.get(entity), 0);
+            }
+        } catch (Exception ex) {
+            // 估算失败时只计算已累加的部分
+        }
+        return size;
+    }
+
+    private long sizeOf(Object value, int depth) throws Exception {
+        if (value == null || value instanceof Enum<?> || depth > MAX_DEPTH) {
+            return 0;
+        }
+        if (value instanceof Long || value instanceof Double) {
+            return 24;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return 16;
+        }
+        if (value instanceof CharSequence s) {
+            return 40 + s.length();
+        }
+        var clazz = value.getClass();
+        if (clazz.isArray()) {
+            return arraySize(value, depth);
+        }
+        if (value instanceof Collection<?> collection) {
+            return 40 + sampled(collection, collection.size(), 24, depth);
+        }
+        if (value instanceof Map<?, ?> map) {
+            return 48 + sampled(map.entrySet(), map.size(), 32, depth);
+        }
+        // 增强后的子实体按原始类型计算，不计算指向父实体的引用
+        if (clazz.getName().endsWith("$Proxy")) {
+            clazz = clazz.getSuperclass();
+        }
+        var sub = info.subEntities().get(clazz);
+        if (sub != null) {
+            long size = OBJECT_HEADER + (long) REFERENCE * sub.fields().size();
+            for (var field : sub.fields().values()) {
+                size += sizeOf(field.get(value), depth + 1);
+            }
+            return size;
+        }
+        return objectSize(value, depth);
+    }
+
+    /**
+     * 抽样前SAMPLE_SIZE个元素，按平均值推算
+     *
+     * @param overhead 每个元素的节点开销
+     */
+    private long sampled(Iterable<?> values, int count, int overhead, int depth) throws Exception {
+        if (count == 0) {
+            return 0;
+        }
+        long sampleSize = 0;
+        int sampled = 0;
+        for (Object value : values) {
+            if (value instanceof Map.Entry<?, ?> entry) {
+                sampleSize += sizeOf(entry.getKey(), depth + 1) + sizeOf(entry.getValue(), depth + 1);
+            } else {
+                sampleSize += sizeOf(value, depth + 1);
+            }
+            if (++sampled >= SAMPLE_SIZE) {
+                break;
+            }
+        }
+        return (long) count * overhead + sampleSize * count / sampled;
+    }
+
+    private long arraySize(Object array, int depth) throws Exception {
+        var component = array.getClass().getComponentType();
+        if (!component.isPrimitive()) {
+            var objects = (Object[]) array;
+            return OBJECT_HEADER + (long) REFERENCE * objects.length + sampled(Arrays.asList(objects), objects.length, 0, depth);
+        }
+        int length = Array.getLength(array);
+        int element = component == long.class || component == double.class ? 8
+                : component == int.class || component == float.class ? 4
+                : component == short.class || component == char.class ? 2 : 1;
+        return OBJECT_HEADER + (long) length * element;
+    }
+
+    private long objectSize(Object value, int depth) throws Exception {
+        var fields = FIELDS.computeIfAbsent(value.getClass(), EntityWeigher::instanceFields);
+        long size = OBJECT_HEADER + (long) REFERENCE * fields.size();
+        for (var field : fields) {
+            if (field.getType().isPrimitive()) {
+                size += 8;
+            } else {
+                size += sizeOf(field.get(value), depth + 1);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 可访问的实例字段，无法访问的类型(如JDK内部类型)只计算对象头
+     */
+    private static List<Field> instanceFields(Class<?> clazz) {
+        var fields = new ArrayList<Field>();
+        try {
+            for (var c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (var field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+        } catch (RuntimeException ex) {
+            return List.of();
+        }
+        return List.copyOf(fields);
+    }
+}
@@ -0,0 +1,146 @@
+package org.manaslu.cache.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 有界的淘汰入库队列，缓存淘汰的数据由单独的线程入库，不占用触发淘汰的业务线程
+ * 入库完成前数据保留在队列中，加载时可以直接取回，不会读到数据库中的旧数据
+ * 队列满时只记录在等待中，按主键合并后由入库线程处理，提交线程不写数据库
+ */
+@Slf4j
+final class EvictionQueue<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> {
+
+    /**
+     * 每批最多处理的数量
+     */
+    static final int BATCH_SIZE = 500;
+    /**
+     * 队列为空时检查溢出的间隔
+     */
+    private static final long IDLE_WAIT_MS = 100;
+
+    private final String name;
+    private final BlockingQueue<Entity> queue;
+    /**
+     * 淘汰后等待入库的数据
+     */
+    private final Map<ID, Entity> pending = new ConcurrentHashMap<>();
+    /**
+     * 有数据因队列满只记录在等待中
+     */
+    private final AtomicBoolean overflow = new AtomicBoolean();
+    /**
+     * 入库
+     */
+    private final Consumer<Entity> flush;
+
+    /**
+     * @param name     名称
+     * @param capacity 队列容量
+     * @param flush    入库
+     */
+    EvictionQueue(String name, int capacity, Consumer<Entity> flush) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flush = flush;
+        Thread.ofVirtual().name("manaslu-eviction-" + name).start(this::run);
+        // 系统结束时等待队列执行完成
+        Runtime.getRuntime().addShutdownHook(new Thread(this::awaitEmpty));
+    }
+
+    /**
+     * 提交淘汰的数据
+     */
+    void submit(Entity entity) {
+        pending.put(entity.id(), entity);
+        if (!queue.offer(entity)) {
+            overflow.set(true);
+        }
+    }
+
+    /**
+     * 取回等待入库的数据，取回后不再由队列入库，未入库的修改仍由入库策略负责
+     */
+    Optional<Entity> take(ID id) {
+        return Optional.ofNullable(pending.remove(id));
+    }
+
+    /**
+     * 是否仍在等待入库，没有被取回或丢弃
+     */
+    boolean isPending(Entity entity) {
+        return pending.get(entity.id()) == entity;
+    }
+
+    /**
+     * 丢弃等待入库的数据，删除时调用
+     */
+    void discard(ID id) {
+        pending.remove(id);
+    }
+
+    int size() {
+        return pending.size();
+    }
+
+    private void run() {
+        var batch = new ArrayList<Entity>(BATCH_SIZE);
+        while (true) {
+            try {
+                var first = queue.poll(IDLE_WAIT_MS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    batch.forEach(this::execute);
+                }
+                // 处理溢出的数据，已入库的跳过
+                if (overflow.getAndSet(false)) {
+                    pending.values().forEach(this::execute);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 已被取回或丢弃的数据跳过，入库完成后才从等待中移除
+     */
+    private void execute(Entity entity) {
+        var id = entity.id();
+        if (pending.get(id) != entity) {
+            return;
+        }
+        try {
+            flush.accept(entity);
+        } catch (Exception ex) {
+            log.error("淘汰数据入库失败 {}, {}", name, id, ex);
+        } finally {
+            pending.remove(id, entity);
+        }
+    }
+
+    void awaitEmpty() {
+        var deadline = System.currentTimeMillis() + MutationQueue.SHUTDOWN_WAIT_MS;
+        while (!pending.isEmpty() && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        if (!pending.isEmpty()) {
+            log.error("淘汰入库队列未执行完成 {}, 数量 = {}", name, pending.size());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.manaslu.cache.core;
+
+import org.manaslu.cache.core.annotations.Id;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 实体字段的位掩码，记录修改了哪些字段
+ * 数据库字段按名称排序分配下标，与声明顺序无关；第63个及之后的字段共用最后一位，修改其中任意一个都会更新这些字段
+ */
+public final class FieldMask {
+
+    /**
+     * 所有字段，最高位保留
+     */
+    public static final long ALL = Long.MAX_VALUE;
+    /**
+     * 单独占一位的字段数量
+     */
+    static final int MAX_BITS = 63;
+
+    private static final ClassValue<Map<String, Long>> BITS = new ClassValue<>() {
+        @Override
+        protected Map<String, Long> computeValue(Class<?> type) {
+            // 与EntityTypeManager的数据库字段一致
+            var names = Arrays.stream(type.getDeclaredFields())
+                    .filter(FieldMask::persistent)
+                    .map(Field::getName)
+                    .sorted()
+                    .toList();
+            var bits = new HashMap<String, Long>(names.size() * 2);
+            for (int i = 0; i < names.size(); i++) {
+                bits.put(names.get(i), 1L << Math.min(i, MAX_BITS - 1));
+            }
+            return Map.copyOf(bits);
+        }
+    };
+
+    private FieldMask() {
+    }
+
+    private static boolean persistent(Field field) {
+        var modifiers = field.getModifiers();
+        return !Modifier.isFinal(modifiers) && !Modifier.isTransient(modifiers) && !Modifier.isStatic(modifiers)
+                && !field.isAnnotationPresent(Id.class);
+    }
+
+    /**
+     * @param type  原始实体类型
+     * @param field 字段名
+     * @return 字段对应的位，不是数据库字段时为0
+     */
+    public static long bit(Class<?> type, String field) {
+        return BITS.get(type).getOrDefault(field, 0L);
+    }
+
+    /**
+     * 多个字段的掩码，生成的增强类在类初始化时调用
+     */
+    public static long of(Class<?> type, String... fields) {
+        return of(type, Arrays.asList(fields));
+    }
+
+    public static long of(Class<?> type, Collection<String> fields) {
+        long mask = 0;
+        for (var field : fields) {
+            mask |= bit(type, field);
+        }
+        return mask;
+    }
+
+    /**
+     * 掩码包含的字段名
+     */
+    public static Set<String> names(Class<?> type, long mask) {
+        var names = new HashSet<String>();
+        BITS.get(type).forEach((name, bit) -> {
+            if ((mask & bit) != 0) {
+                names.add(name);
+            }
+        });
+        return names;
+    }
+}
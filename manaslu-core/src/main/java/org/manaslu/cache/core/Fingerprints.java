@@ -0,0 +1,308 @@
+package org.manaslu.cache.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 入库前的变化检测
+ * 实体上记录每个字段上次入库值的64位指纹，入库时去掉值没有变化的字段，所有字段都没变化时不写数据库
+ * 基本类型和字符串按值计算，子实体按字段递归计算；无法计算指纹的类型总是写入
+ */
+@Slf4j
+final class Fingerprints<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> {
+
+    private static final Fingerprints<?, ?> DISABLED = new Fingerprints<>();
+    private static final long NULL = 0x9E3779B97F4A7C15L;
+    private static final long PRIME = 0x100000001B3L;
+
+    /**
+     * 掩码每一位对应的字段，超过63个字段时最后一位对应多个字段
+     */
+    @Nullable
+    private final ManasluField[][] fields;
+    /**
+     * 子实体原始类型的字段
+     */
+    private final Map<Class<?>, Collection<ManasluField>> subEntities;
+    /**
+     * 没有写入数据库的实体数量
+     */
+    private final LongAdder suppressedEntityCount = new LongAdder();
+    /**
+     * 没有写入数据库的字段数量
+     */
+    private final LongAdder suppressedFieldCount = new LongAdder();
+
+    private Fingerprints() {
+        this.fields = null;
+        this.subEntities = Map.of();
+    }
+
+    Fingerprints(EntityTypeInfo typeInfo) {
+        this.fields = typeInfo.fieldsByBit();
+        var subs = new HashMap<Class<?>, Collection<ManasluField>>();
+        typeInfo.subEntities().forEach((type, info) -> subs.put(type, info.fields().values()));
+        this.subEntities = Map.copyOf(subs);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> Fingerprints<ID, Entity> disabled() {
+        return (Fingerprints<ID, Entity>) DISABLED;
+    }
+
+    boolean enabled() {
+        return fields != null;
+    }
+
+    long suppressedEntityCount() {
+        return suppressedEntityCount.sum();
+    }
+
+    long suppressedFieldCount() {
+        return suppressedFieldCount.sum();
+    }
+
+    /**
+     * 计算更新字段的指纹，去掉与上次入库相同的字段
+     *
+     * @param owner 记录指纹的实体
+     * @param info  读取字段值的更新，开启快照时是快照
+     * @return 需要写入的更新，所有字段都没有变化时为null
+     */
+    @Nullable
+    Diff<ID, Entity> diff(Entity owner, UpdateInfo<ID, Entity> info) {
+        if (fields == null) {
+            return new Diff<>(owner, info, null, 0);
+        }
+        var entity = info.entity();
+        // 直接读取实体时记录修改计数，写入后比较
+        var stamp = owner.mutationStamp();
+        var old = owner.fingerprints;
+        var hashes = old == null ? new long[fields.length + 1] : old.clone();
+        long known = hashes[0];
+        long mask = info.mask();
+        long unchanged = 0;
+        for (int i = 0; i < fields.length; i++) {
+            long bit = 1L << i;
+            if ((mask & bit) == 0 || fields[i] == null) {
+                continue;
+            }
+            var hash = hash(entity, fields[i]);
+            if (hash == null) {
+                known &= ~bit;
+                continue;
+            }
+            if ((known & bit) != 0 && hashes[i + 1] == hash) {
+                unchanged |= bit;
+            }
+            hashes[i + 1] = hash;
+            known |= bit;
+        }
+        hashes[0] = known;
+        if (unchanged == 0) {
+            return new Diff<>(owner, info, hashes, stamp);
+        }
+        suppressedFieldCount.add(Long.bitCount(unchanged));
+        if ((mask & ~unchanged) == 0) {
+            suppressedEntityCount.increment();
+            return null;
+        }
+        return new Diff<>(owner, new UpdateInfo<>(entity, mask & ~unchanged), hashes, stamp);
+    }
+
+    /**
+     * 写入成功后保存指纹
+     * 没有快照时计算指纹和写入读取的都是实体，期间有修改时写入的字段都不一定是计算指纹时的值
+     *
+     * @param redirty 写入期间又被修改的字段，数据库中的值不一定是计算指纹时的值
+     */
+    void commit(Diff<ID, Entity> diff, long redirty) {
+        if (diff.hashes() == null) {
+            return;
+        }
+        var owner = diff.owner();
+        if (diff.info().entity() == owner && ((int) diff.stamp() != 0 || owner.mutationStamp() != diff.stamp())) {
+            redirty |= diff.info().mask();
+        }
+        diff.hashes()[0] &= ~redirty;
+        diff.owner().fingerprints = diff.hashes();
+    }
+
+    /**
+     * 同一位上所有字段的指纹
+     *
+     * @return 无法计算时为null
+     */
+    @Nullable
+    private Long hash(Object target, ManasluField[] bitFields) {
+        long h = NULL;
+        for (var field : bitFields) {
+            Object value;
+            try {
+                value = field.get(target);
+            } catch (Exception ex) {
+                log.warn("读取字段失败 {}", field.getName(), ex);
+                return null;
+            }
+            var hash = hash(value, 0);
+            if (hash == null) {
+                return null;
+            }
+            h = mix(h * PRIME + hash);
+        }
+        return h;
+    }
+
+    @Nullable
+    private Long hash(@Nullable Object value, int depth) {
+        if (value == null) {
+            return NULL;
+        }
+        // 引用成环时无法计算
+        if (depth > 16) {
+            return null;
+        }
+        switch (value) {
+            case Boolean b -> {
+                return mix(b ? NULL + 1 : NULL + 2);
+            }
+            case Character c -> {
+                return mix(c);
+            }
+            case Float f -> {
+                return mix(Float.floatToIntBits(f));
+            }
+            case Double d -> {
+                return mix(Double.doubleToLongBits(d));
+            }
+            case Byte b -> {
+                return mix(b);
+            }
+            case Short s -> {
+                return mix(s);
+            }
+            case Integer i -> {
+                return mix(i);
+            }
+            case Long l -> {
+                return mix(l);
+            }
+            case String s -> {
+                return hash(s);
+            }
+            case Enum<?> e -> {
+                return hash(e.name());
+            }
+            case byte[] bytes -> {
+                long h = mix(bytes.length);
+                for (byte b : bytes) {
+                    h = (h ^ b) * PRIME;
+                }
+                return mix(h);
+            }
+            case int[] ints -> {
+                long h = mix(ints.length);
+                for (int i : ints) {
+                    h = mix(h * PRIME + i);
+                }
+                return h;
+            }
+            case long[] longs -> {
+                long h = mix(longs.length);
+                for (long l : longs) {
+                    h = mix(h * PRIME + l);
+                }
+                return h;
+            }
+            case Object[] objects -> {
+                return hash(Arrays.asList(objects), depth);
+            }
+            case Collection<?> collection -> {
+                // 顺序不同时指纹不同，只会多写入一次
+                long h = mix(collection.size());
+                for (var e : collection) {
+                    var hash = hash(e, depth + 1);
+                    if (hash == null) {
+                        return null;
+                    }
+                    h = mix(h * PRIME + hash);
+                }
+                return h;
+            }
+            case Map<?, ?> map -> {
+                long h = mix(map.size());
+                for (var e : map.entrySet()) {
+                    var key = hash(e.getKey(), depth + 1);
+                    var hash = hash(e.getValue(), depth + 1);
+                    if (key == null || hash == null) {
+                        return null;
+                    }
+                    h = mix(mix(h * PRIME + key) * PRIME + hash);
+                }
+                return h;
+            }
+            default -> {
+                var type = value.getClass();
+                // 增强后的子实体
+                if (type.getName().endsWith("$Proxy")) {
+                    type = type.getSuperclass();
+                }
+                var subFields = subEntities.get(type);
+                if (subFields == null) {
+                    return null;
+                }
+                long h = hash(type.getName());
+                for (var field : subFields) {
+                    Long hash;
+                    try {
+                        hash = hash(field.get(value), depth + 1);
+                    } catch (Exception ex) {
+                        log.warn("读取子实体字段失败 {}", field.getName(), ex);
+                        return null;
+                    }
+                    if (hash == null) {
+                        return null;
+                    }
+                    h = mix(mix(h * PRIME + hash(field.getName())) * PRIME + hash);
+                }
+                return h;
+            }
+        }
+    }
+
+    private static long hash(String s) {
+        long h = mix(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * PRIME;
+        }
+        return mix(h);
+    }
+
+    /**
+     * MurmurHash3的64位混合，一一映射
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @param owner  记录指纹的实体
+     * @param info   需要写入的更新
+     * @param hashes 写入成功后保存的指纹，第0个是已知指纹的掩码，第i+1个是第i位的指纹；未开启时为null
+     * @param stamp  计算指纹前实体的修改计数
+     */
+    record Diff<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>>(Entity owner, UpdateInfo<ID, Entity> info, @Nullable long[] hashes,
+                                                                              long stamp) {
+    }
+}
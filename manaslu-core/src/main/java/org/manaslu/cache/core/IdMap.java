@@ -0,0 +1,150 @@
+package org.manaslu.cache.core;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BinaryOperator;
+import java.util.function.ToLongFunction;
+
+/**
+ * 主键映射，线程安全
+ * int/long主键使用分段的ConcurrentLongMap，不存储装箱的主键
+ */
+sealed interface IdMap<ID, V> permits HashIdMap, LongIdMap {
+
+    /**
+     * @param keyFunction 主键转换为long，为null时使用HashMap
+     */
+    static <ID, V> IdMap<ID, V> create(@Nullable ToLongFunction<ID> keyFunction) {
+        return keyFunction == null ? new HashIdMap<>() : new LongIdMap<>(keyFunction);
+    }
+
+    @Nullable
+    V get(ID id);
+
+    @Nullable
+    V put(ID id, V value);
+
+    @Nullable
+    V remove(ID id);
+
+    /**
+     * 原子地合并，不存在时放入value
+     *
+     * @param function 参数为已有的值和value
+     * @return 是否新放入
+     */
+    boolean merge(ID id, V value, BinaryOperator<V> function);
+
+    boolean containsKey(ID id);
+
+    int size();
+
+    boolean isEmpty();
+
+    List<V> values();
+}
+
+final class HashIdMap<ID, V> implements IdMap<ID, V> {
+
+    private final ConcurrentHashMap<ID, V> map = new ConcurrentHashMap<>();
+
+    @Override
+    public V get(ID id) {
+        return map.get(id);
+    }
+
+    @Override
+    public V put(ID id, V value) {
+        return map.put(id, value);
+    }
+
+    @Override
+    public V remove(ID id) {
+        return map.remove(id);
+    }
+
+    @Override
+    public boolean merge(ID id, V value, BinaryOperator<V> function) {
+        var absent = new boolean[1];
+        map.compute(id, (k, old) -> {
+            if (old == null) {
+                absent[0] = true;
+                return value;
+            }
+            return function.apply(old, value);
+        });
+        return absent[0];
+    }
+
+    @Override
+    public boolean containsKey(ID id) {
+        return map.containsKey(id);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public List<V> values() {
+        return new ArrayList<>(map.values());
+    }
+}
+
+final class LongIdMap<ID, V> implements IdMap<ID, V> {
+
+    private final ConcurrentLongMap<V> map = new ConcurrentLongMap<>();
+    private final ToLongFunction<ID> keyFunction;
+
+    LongIdMap(ToLongFunction<ID> keyFunction) {
+        this.keyFunction = keyFunction;
+    }
+
+    @Override
+    public V get(ID id) {
+        return map.get(keyFunction.applyAsLong(id));
+    }
+
+    @Override
+    public V put(ID id, V value) {
+        return map.put(keyFunction.applyAsLong(id), value);
+    }
+
+    @Override
+    public V remove(ID id) {
+        return map.remove(keyFunction.applyAsLong(id));
+    }
+
+    @Override
+    public boolean merge(ID id, V value, BinaryOperator<V> function) {
+        return map.merge(keyFunction.applyAsLong(id), value, function) == null;
+    }
+
+    @Override
+    public boolean containsKey(ID id) {
+        return map.get(keyFunction.applyAsLong(id)) != null;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, map.size());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.size() == 0;
+    }
+
+    @Override
+    public List<V> values() {
+        return map.values();
+    }
+}
@@ -0,0 +1,383 @@
+package org.manaslu.cache.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.manaslu.cache.core.exception.ManasluException;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * 延迟入库的预写日志，进程崩溃后启动时把未入库的修改回放到数据库
+ * 待入库表中的更新对象只放入内存队列一次，定时合并后序列化追加到内存映射文件并刷盘，崩溃时最多丢失一个刷盘间隔的修改
+ * 开启入库快照时序列化快照，不读取正在修改的实体
+ * 日志按代分文件，入库检查点开始时切换到新一代，检查点内的数据全部入库成功后删除旧代文件
+ */
+@Slf4j
+final class Journal<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> {
+
+    private static final Journal<?, ?> DISABLED = new Journal<>();
+    /**
+     * 单个日志文件的大小，单条记录更大时按记录大小创建
+     */
+    static final int FILE_BYTES = 64 << 20;
+    private static final String SUFFIX = ".journal";
+    /**
+     * 记录头，长度和校验和
+     */
+    private static final int HEADER_BYTES = 8;
+
+    @Nullable
+    private final Path dir;
+    private final String name;
+    private final Function<Entity, byte[]> encoder;
+    private final Function<byte[], Entity> decoder;
+    private final Snapshots<ID, Entity> snapshots;
+    /**
+     * 未写入文件的修改
+     */
+    private final ConcurrentLinkedQueue<UpdateInfo<ID, Entity>> pending = new ConcurrentLinkedQueue<>();
+    /**
+     * 启动时已存在的文件都小于这一代，需要回放
+     */
+    private final long firstGeneration;
+
+    private final StampedLock lock = new StampedLock();
+    /**
+     * 当前代，持有锁时访问
+     */
+    private long generation;
+    @Nullable
+    private MappedByteBuffer buffer;
+
+    private Journal() {
+        this.dir = null;
+        this.name = "";
+        this.encoder = null;
+        this.decoder = null;
+        this.snapshots = Snapshots.disabled();
+        this.firstGeneration = 0;
+    }
+
+    /**
+     * @param dir        日志目录
+     * @param name       文件名前缀，每个实体类型不同
+     * @param encoder    序列化
+     * @param decoder    反序列化
+     * @param snapshots  入库快照
+     * @param syncTimeMs 刷盘间隔
+     * @param executor   定时器
+     */
+    Journal(String dir, String name, Function<Entity, byte[]> encoder, Function<byte[], Entity> decoder, Snapshots<ID, Entity> snapshots,
+            long syncTimeMs, ScheduledExecutorService executor) {
+        if (syncTimeMs <= 0) {
+            throw new IllegalArgumentException("预写日志刷盘间隔必须大于0: " + syncTimeMs);
+        }
+        this.dir = Path.of(dir);
+        this.name = name;
+        this.encoder = encoder;
+        this.decoder = decoder;
+        this.snapshots = snapshots;
+        try {
+            Files.createDirectories(this.dir);
+        } catch (IOException ex) {
+            throw new ManasluException("创建预写日志目录失败: " + dir, ex);
+        }
+        var files = files();
+        this.firstGeneration = files.isEmpty() ? 0 : files.getLast().generation() + 1;
+        this.generation = firstGeneration;
+        executor.scheduleWithFixedDelay(this::sync, syncTimeMs, syncTimeMs, TimeUnit.MILLISECONDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> Journal<ID, Entity> disabled() {
+        return (Journal<ID, Entity>) DISABLED;
+    }
+
+    boolean enabled() {
+        return dir != null;
+    }
+
+    /**
+     * 记录修改，只放入队列，已在队列中的对象不重复放入
+     *
+     * @param info 待入库表中的更新对象
+     */
+    void append(UpdateInfo<ID, Entity> info) {
+        if (dir == null) {
+            return;
+        }
+        if (info.markJournaled()) {
+            pending.add(info);
+        }
+    }
+
+    /**
+     * 回放上次运行留下的日志，同一主键的修改合并，全部成功后删除日志
+     *
+     * @param batchSize 每批数量
+     * @param consumer  批量入库
+     * @return 回放的数量
+     */
+    int replay(int batchSize, Consumer<List<UpdateInfo<ID, Entity>>> consumer) {
+        if (dir == null) {
+            return 0;
+        }
+        var files = files().stream().filter(e -> e.generation() < firstGeneration).toList();
+        var merged = new LinkedHashMap<ID, UpdateInfo<ID, Entity>>();
+        for (var file : files) {
+            read(file.path(), info -> merged.merge(info.entity().id(), info, this::union));
+        }
+        var infos = new ArrayList<>(merged.values());
+        try {
+            for (int from = 0; from < infos.size(); from += batchSize) {
+                consumer.accept(infos.subList(from, Math.min(from + batchSize, infos.size())));
+            }
+        } catch (Exception ex) {
+            throw new ManasluException("回放预写日志失败: " + name, ex);
+        }
+        for (var file : files) {
+            delete(file.path());
+        }
+        return infos.size();
+    }
+
+    /**
+     * 把队列中的修改写入当前文件并刷盘
+     */
+    void sync() {
+        if (dir == null) {
+            return;
+        }
+        var writeLock = lock.writeLock();
+        try {
+            writePending();
+        } catch (Exception ex) {
+            log.error("预写日志写入失败 {}", name, ex);
+        } finally {
+            lock.unlockWrite(writeLock);
+        }
+    }
+
+    /**
+     * 切换到新一代文件，之前的修改写入旧文件
+     *
+     * @return 新一代的编号，之前的修改全部入库后传给release
+     */
+    long rotate() {
+        if (dir == null) {
+            return 0;
+        }
+        var writeLock = lock.writeLock();
+        try {
+            try {
+                writePending();
+            } catch (Exception ex) {
+                log.error("预写日志写入失败 {}", name, ex);
+            }
+            buffer = null;
+            return ++generation;
+        } finally {
+            lock.unlockWrite(writeLock);
+        }
+    }
+
+    /**
+     * 删除小于generation的日志文件
+     */
+    void release(long generation) {
+        if (dir == null) {
+            return;
+        }
+        var writeLock = lock.writeLock();
+        try {
+            for (var file : files()) {
+                if (file.generation() < generation) {
+                    delete(file.path());
+                }
+            }
+        } finally {
+            lock.unlockWrite(writeLock);
+        }
+    }
+
+    /**
+     * 同一主键的多次修改只写一次，序列化时取最新值
+     */
+    private void writePending() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        var merged = new LinkedHashMap<ID, UpdateInfo<ID, Entity>>();
+        UpdateInfo<ID, Entity> info;
+        while ((info = pending.poll()) != null) {
+            // 先取消标记再读取，之后的修改会重新放入队列
+            info.unmarkJournaled();
+            merged.merge(info.entity().id(), info, this::union);
+        }
+        for (var e : merged.values()) {
+            var snapshot = snapshots.capture(e);
+            // 一直在修改，放回队列下次再写
+            if (snapshot == null) {
+                append(e);
+                continue;
+            }
+            byte[] record;
+            try {
+                record = encode(snapshot);
+            } catch (Exception ex) {
+                log.error("预写日志序列化失败 {}", e.entity().id(), ex);
+                continue;
+            }
+            write(record);
+        }
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    private void write(byte[] record) throws IOException {
+        var length = HEADER_BYTES + record.length;
+        if (buffer != null && buffer.remaining() < length) {
+            // 当前文件写满
+            buffer.force();
+            buffer = null;
+            generation++;
+        }
+        if (buffer == null) {
+            var path = dir.resolve(name + "." + generation + SUFFIX);
+            try (var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(FILE_BYTES, length));
+            }
+        }
+        var crc = new CRC32();
+        crc.update(record);
+        buffer.putInt(record.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(record);
+    }
+
+    private byte[] encode(UpdateInfo<ID, Entity> info) throws IOException {
+        var entity = encoder.apply(info.entity());
+        var bytes = new ByteArrayOutputStream(entity.length + 64);
+        var out = new DataOutputStream(bytes);
+        // 记录字段名，重启后字段变化时掩码不再对应
+        var properties = info.updateProperties();
+        out.writeShort(properties.size());
+        for (var property : properties) {
+            out.writeUTF(property);
+        }
+        out.writeInt(entity.length);
+        out.write(entity);
+        return bytes.toByteArray();
+    }
+
+    private UpdateInfo<ID, Entity> decode(byte[] record) throws IOException {
+        var in = new DataInputStream(new ByteArrayInputStream(record));
+        int count = in.readShort();
+        var properties = new HashSet<String>(count * 2);
+        for (int i = 0; i < count; i++) {
+            properties.add(in.readUTF());
+        }
+        var entity = new byte[in.readInt()];
+        in.readFully(entity);
+        return new UpdateInfo<>(decoder.apply(entity), properties);
+    }
+
+    /**
+     * 读到长度为0或校验失败为止，崩溃时最后一条记录可能不完整
+     */
+    private void read(Path path, Consumer<UpdateInfo<ID, Entity>> consumer) {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= HEADER_BYTES) {
+                var length = buffer.getInt();
+                var checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                var record = new byte[length];
+                buffer.get(record);
+                var crc = new CRC32();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("预写日志校验失败, 忽略之后的记录 {}", path);
+                    break;
+                }
+                try {
+                    consumer.accept(decode(record));
+                } catch (Exception ex) {
+                    log.error("预写日志反序列化失败 {}", path, ex);
+                }
+            }
+        } catch (IOException ex) {
+            throw new ManasluException("读取预写日志失败: " + path, ex);
+        }
+    }
+
+    /**
+     * 按代排序的日志文件
+     */
+    private List<JournalFile> files() {
+        var prefix = name + ".";
+        try (var stream = Files.list(dir)) {
+            return stream.map(path -> {
+                        var fileName = path.getFileName().toString();
+                        if (!fileName.startsWith(prefix) || !fileName.endsWith(SUFFIX)) {
+                            return null;
+                        }
+                        try {
+                            return new JournalFile(path, Long.parseLong(fileName.substring(prefix.length(), fileName.length() - SUFFIX.length())));
+                        } catch (NumberFormatException ex) {
+                            return null;
+                        }
+                    })
+                    .filter(e -> e != null)
+                    .sorted(Comparator.comparingLong(JournalFile::generation))
+                    .toList();
+        } catch (IOException ex) {
+            throw new ManasluException("读取预写日志目录失败: " + dir, ex);
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            // 下次检查点重试
+            log.warn("删除预写日志失败 {}", path, ex);
+        }
+    }
+
+    /**
+     * 合并修改字段，取后一次的实体
+     * 开启快照时记录的实体只有修改的字段，只在前一次修改的字段从前一次的实体复制
+     */
+    private UpdateInfo<ID, Entity> union(UpdateInfo<ID, Entity> old, UpdateInfo<ID, Entity> current) {
+        snapshots.copyFields(old.entity(), current.entity(), old.mask() & ~current.mask());
+        return new UpdateInfo<>(current.entity(), old.mask() | current.mask());
+    }
+
+    private record JournalFile(Path path, long generation) {
+    }
+}
@@ -0,0 +1,103 @@
+package org.manaslu.cache.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时统计，分段计数，多线程记录时没有竞争
+ * 直方图按2的幂分段，每段再分4个子段，分位数误差不超过25%
+ */
+public final class LatencyRecorder {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 63 * SUB_BUCKETS;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    LatencyRecorder() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos 耗时(ns)
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        count.increment();
+        totalNanos.add(nanos);
+        buckets[bucket(nanos)].increment();
+    }
+
+    /**
+     * 记录从start到现在的耗时
+     *
+     * @param start System.nanoTime()
+     */
+    void recordSince(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    public double total(TimeUnit unit) {
+        return (double) totalNanos() / unit.toNanos(1);
+    }
+
+    /**
+     * 分位数，返回所在分段的上界
+     *
+     * @param percentile 0到1之间
+     * @return 耗时(ns)，没有记录时为0
+     */
+    public long percentile(double percentile) {
+        var counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(1, Math.max(0, percentile))));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exp - 2)) & (SUB_BUCKETS - 1);
+        return (exp - 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exp = bucket / SUB_BUCKETS + 1;
+        long next = (long) (SUB_BUCKETS + 1 + bucket % SUB_BUCKETS) << (exp - 2);
+        // 最高段溢出
+        return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+}
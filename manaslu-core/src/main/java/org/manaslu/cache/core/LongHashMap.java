@@ -0,0 +1,227 @@
+package org.manaslu.cache.core;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * long主键的开放寻址哈希表，线性探测，删除时后移补位，不存储装箱的主键
+ * 非线程安全，get在并发修改时不会越界，可以配合乐观读使用
+ *
+ * @param <V> 值，不能为null
+ */
+final class LongHashMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile Table table;
+    private int size;
+
+    LongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    LongHashMap(int expectedSize) {
+        this.table = new Table(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * int/long主键返回转换函数，其他类型返回null
+     */
+    @Nullable
+    static <ID> ToLongFunction<ID> keyFunction(Class<?> idType) {
+        if (idType == int.class || idType == Integer.class || idType == long.class || idType == Long.class) {
+            return id -> ((Number) id).longValue();
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    V get(long key) {
+        var t = table;
+        var keys = t.keys;
+        var values = t.values;
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        // 最多探测一轮，并发修改时也能结束
+        for (int n = 0; n <= mask; n++) {
+            var v = values[i];
+            if (v == null) {
+                return null;
+            }
+            if (keys[i] == key) {
+                return (V) v;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return 旧值
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    V put(long key, V value) {
+        var t = table;
+        int mask = t.keys.length - 1;
+        int i = mix(key) & mask;
+        while (t.values[i] != null) {
+            if (t.keys[i] == key) {
+                var old = (V) t.values[i];
+                t.values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        t.keys[i] = key;
+        t.values[i] = value;
+        if (++size > (t.keys.length >>> 1) + (t.keys.length >>> 2)) {
+            resize(t.keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return 已存在的值，不存在时放入并返回null
+     */
+    @Nullable
+    V putIfAbsent(long key, V value) {
+        var old = get(key);
+        if (old != null) {
+            return old;
+        }
+        put(key, value);
+        return null;
+    }
+
+    /**
+     * @return 删除的值
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    V remove(long key) {
+        var t = table;
+        var keys = t.keys;
+        var values = t.values;
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                var old = (V) values[i];
+                shiftBack(t, i);
+                size--;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * 删除位置i，将后面探测链上的数据前移，保证查找不会提前遇到空位
+     */
+    private static void shiftBack(Table t, int i) {
+        var keys = t.keys;
+        var values = t.values;
+        int mask = keys.length - 1;
+        int gap = i;
+        int next = (i + 1) & mask;
+        while (values[next] != null) {
+            int home = mix(keys[next]) & mask;
+            // home 不在 (gap, next] 之间时可以移到空位
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        table = new Table(MIN_CAPACITY);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<? super V> action) {
+        for (Object v : table.values) {
+            if (v != null) {
+                action.accept((V) v);
+            }
+        }
+    }
+
+    List<V> values() {
+        var list = new ArrayList<V>(size);
+        forEachValue(list::add);
+        return list;
+    }
+
+    /**
+     * 当前的表，扩容时整体替换，配合乐观读遍历
+     */
+    Table table() {
+        return table;
+    }
+
+    private void resize(int capacity) {
+        var old = table;
+        var t = new Table(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < old.values.length; j++) {
+            if (old.values[j] != null) {
+                int i = mix(old.keys[j]) & mask;
+                while (t.values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                t.keys[i] = old.keys[j];
+                t.values[i] = old.values[j];
+            }
+        }
+        table = t;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int mix(long key) {
+        var h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 主键和值数组，一起替换，保证读取时长度一致
+     */
+    static final class Table {
+        final long[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+        }
+    }
+}
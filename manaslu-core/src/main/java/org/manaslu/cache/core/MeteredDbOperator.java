@@ -0,0 +1,144 @@
+package org.manaslu.cache.core;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * 记录数据库操作耗时和失败次数
+ */
+final class MeteredDbOperator<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> implements DbOperator<ID, Entity> {
+
+    private final DbOperator<ID, Entity> delegate;
+    private final RepositoryMetrics metrics;
+
+    MeteredDbOperator(DbOperator<ID, Entity> delegate, RepositoryMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Optional<Entity> select(ID id) {
+        var start = System.nanoTime();
+        try {
+            return delegate.select(id);
+        } catch (RuntimeException ex) {
+            metrics.dbError();
+            throw ex;
+        } finally {
+            metrics.selectRecorder().recordSince(start);
+        }
+    }
+
+    @Override
+    public Map<ID, Entity> selectAll(@Nonnull Collection<ID> ids) {
+        var start = System.nanoTime();
+        try {
+            return delegate.selectAll(ids);
+        } catch (RuntimeException ex) {
+            metrics.dbError();
+            throw ex;
+        } finally {
+            metrics.selectRecorder().recordSince(start);
+        }
+    }
+
+    @Override
+    public boolean supportsScan() {
+        return delegate.supportsScan();
+    }
+
+    @Override
+    public boolean supportsEncode() {
+        return delegate.supportsEncode();
+    }
+
+    @Override
+    public void forEachId(@Nonnull Consumer<ID> consumer) {
+        delegate.forEachId(consumer);
+    }
+
+    @Override
+    public void scan(@Nonnull Consumer<Entity> consumer) {
+        delegate.scan(consumer);
+    }
+
+    @Override
+    public Optional<ID> insert(@Nonnull Entity entity) {
+        try {
+            return delegate.insert(entity);
+        } catch (RuntimeException ex) {
+            metrics.dbError();
+            throw ex;
+        }
+    }
+
+    @Override
+    public List<Optional<ID>> insertAll(@Nonnull List<Entity> entities) {
+        try {
+            return delegate.insertAll(entities);
+        } catch (RuntimeException ex) {
+            metrics.dbError();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void update(@Nonnull UpdateInfo<ID, Entity> entity) {
+        var start = System.nanoTime();
+        try {
+            delegate.update(entity);
+        } catch (RuntimeException ex) {
+            metrics.dbError();
+            throw ex;
+        } finally {
+            metrics.updateRecorder().recordSince(start);
+        }
+    }
+
+    @Override
+    public void updateAll(@Nonnull List<UpdateInfo<ID, Entity>> infos) {
+        var start = System.nanoTime();
+        try {
+            delegate.updateAll(infos);
+        } catch (RuntimeException ex) {
+            metrics.dbError();
+            throw ex;
+        } finally {
+            metrics.updateRecorder().recordSince(start);
+        }
+    }
+
+    @Override
+    public void delete(ID id) {
+        try {
+            delegate.delete(id);
+        } catch (RuntimeException ex) {
+            metrics.dbError();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void deleteAll(@Nonnull Collection<ID> ids) {
+        try {
+            delegate.deleteAll(ids);
+        } catch (RuntimeException ex) {
+            metrics.dbError();
+            throw ex;
+        }
+    }
+
+    @Override
+    public byte[] encode(@Nonnull Entity entity) {
+        return delegate.encode(entity);
+    }
+
+    @Override
+    public Entity decode(@Nonnull byte[] bytes) {
+        return delegate.decode(bytes);
+    }
+}
@@ -0,0 +1,14 @@
+package org.manaslu.cache.core;
+
+/**
+ * 指标扩展点，用于对接外部监控系统
+ * 注册时对已创建的存储类立即回调，之后每创建一个存储类回调一次
+ */
+public interface MetricsListener {
+
+    /**
+     * @param entityType 实体类型
+     * @param repository 存储类，通过metrics()、cacheStats()等读取指标
+     */
+    void onRepositoryCreated(Class<?> entityType, Repository<?, ?> repository);
+}
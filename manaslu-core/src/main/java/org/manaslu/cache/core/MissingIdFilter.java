@@ -0,0 +1,124 @@
+package org.manaslu.cache.core;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 过滤一定不存在的主键，避免重复查询数据库
+ * 1. 不存在数据的缓存，超时后重新查询
+ * 2. 已存在主键的布隆过滤器，启动时加载所有主键，新增时维护，
+ * 只适用于数据只由本进程新增的情况
+ */
+@Slf4j
+final class MissingIdFilter<ID extends Comparable<ID>> {
+
+    @Nullable
+    private final Cache<ID, Boolean> negativeCache;
+    @Nullable
+    private final BloomFilter<ID> bloomFilter;
+
+    private final LongAdder negativeCacheHits = new LongAdder();
+    private final LongAdder bloomFilterHits = new LongAdder();
+
+    /**
+     * @param negativeCacheExpireTime 不存在数据的缓存时间(ms), -1 代表不缓存
+     * @param negativeCacheMaxSize    不存在数据的最大缓存数量
+     * @param bloomFilterDbOperator   用于加载所有主键的数据库操作，null代表不使用布隆过滤器
+     * @param bloomFilterExpectedSize 布隆过滤器预计数量
+     * @param bloomFilterFpp          布隆过滤器误判率
+     */
+    MissingIdFilter(long negativeCacheExpireTime, int negativeCacheMaxSize,
+                    @Nullable DbOperator<ID, ?> bloomFilterDbOperator, int bloomFilterExpectedSize, double bloomFilterFpp) {
+        if (negativeCacheExpireTime > 0) {
+            this.negativeCache = CacheBuilder.newBuilder()
+                    .maximumSize(negativeCacheMaxSize)
+                    .expireAfterWrite(negativeCacheExpireTime, TimeUnit.MILLISECONDS)
+                    .build();
+        } else {
+            this.negativeCache = null;
+        }
+        if (bloomFilterDbOperator != null) {
+            this.bloomFilter = BloomFilter.create(IdFunnel.INSTANCE, bloomFilterExpectedSize, bloomFilterFpp);
+            var start = System.currentTimeMillis();
+            bloomFilterDbOperator.forEachId(bloomFilter::put);
+            log.info("布隆过滤器加载完成, 数量 = {}, 耗时 = {}ms", bloomFilter.approximateElementCount(), System.currentTimeMillis() - start);
+        } else {
+            this.bloomFilter = null;
+        }
+    }
+
+    /**
+     * 不做任何过滤
+     */
+    static <ID extends Comparable<ID>> MissingIdFilter<ID> disabled() {
+        return new MissingIdFilter<>(-1, 0, null, 0, 0);
+    }
+
+    /**
+     * 主键是否一定不存在
+     */
+    boolean definitelyMissing(ID id) {
+        if (negativeCache != null && negativeCache.getIfPresent(id) != null) {
+            negativeCacheHits.increment();
+            return true;
+        }
+        if (bloomFilter != null && !bloomFilter.mightContain(id)) {
+            bloomFilterHits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 记录数据库中不存在
+     */
+    void markMissing(ID id) {
+        if (negativeCache != null) {
+            negativeCache.put(id, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 记录数据库中已存在
+     */
+    void markExisting(ID id) {
+        if (negativeCache != null) {
+            negativeCache.invalidate(id);
+        }
+        if (bloomFilter != null) {
+            bloomFilter.put(id);
+        }
+    }
+
+    MissingIdStats stats() {
+        return new MissingIdStats(negativeCacheHits.sum(), bloomFilterHits.sum(),
+                negativeCache == null ? 0 : negativeCache.size());
+    }
+
+    /**
+     * 数字主键直接写入，其他类型按字符串写入
+     */
+    enum IdFunnel implements Funnel<Object> {
+        INSTANCE;
+
+        @Override
+        public void funnel(Object from, PrimitiveSink into) {
+            if (from instanceof Integer i) {
+                into.putInt(i);
+            } else if (from instanceof Long l) {
+                into.putLong(l);
+            } else {
+                into.putString(from.toString(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+}
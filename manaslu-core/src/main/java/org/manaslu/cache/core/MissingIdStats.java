@@ -0,0 +1,11 @@
+package org.manaslu.cache.core;
+
+/**
+ * 不存在主键过滤统计
+ *
+ * @param negativeCacheHits 不存在数据缓存命中次数
+ * @param bloomFilterHits   布隆过滤器拦截次数
+ * @param negativeCacheSize 当前缓存的不存在主键数量
+ */
+public record MissingIdStats(long negativeCacheHits, long bloomFilterHits, long negativeCacheSize) {
+}
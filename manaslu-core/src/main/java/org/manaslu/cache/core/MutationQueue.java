@@ -0,0 +1,161 @@
+package org.manaslu.cache.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 有界的异步修改队列
+ * 单线程按提交顺序执行，保证同一个主键先进先出，连续的删除合并为一次批量删除
+ * 队列满时阻塞提交线程
+ */
+@Slf4j
+final class MutationQueue<ID extends Comparable<ID>> {
+
+    /**
+     * 每批最多处理的数量
+     */
+    static final int BATCH_SIZE = 500;
+    /**
+     * 系统结束时最多等待时间
+     */
+    static final long SHUTDOWN_WAIT_MS = 30_000L;
+
+    private final String name;
+    private final BlockingQueue<Mutation<ID>> queue;
+    /**
+     * 批量删除
+     */
+    private final Consumer<List<ID>> deleteBatch;
+    /**
+     * 只删除缓存
+     */
+    private final Consumer<ID> evict;
+    /**
+     * 未完成的数量
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * @param name        名称
+     * @param capacity    队列容量
+     * @param deleteBatch 批量删除
+     * @param evict       只删除缓存
+     */
+    MutationQueue(String name, int capacity, Consumer<List<ID>> deleteBatch, Consumer<ID> evict) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.deleteBatch = deleteBatch;
+        this.evict = evict;
+        Thread.ofVirtual().name("manaslu-mutation-" + name).start(this::run);
+        // 系统结束时等待队列执行完成
+        Runtime.getRuntime().addShutdownHook(new Thread(this::awaitEmpty));
+    }
+
+    /**
+     * 删除数据库和缓存数据
+     */
+    CompletableFuture<Void> delete(ID id) {
+        return submit(new Mutation<>(id, true, new CompletableFuture<>()));
+    }
+
+    /**
+     * 入库后删除缓存数据
+     */
+    CompletableFuture<Void> evict(ID id) {
+        return submit(new Mutation<>(id, false, new CompletableFuture<>()));
+    }
+
+    private CompletableFuture<Void> submit(Mutation<ID> mutation) {
+        pending.incrementAndGet();
+        try {
+            queue.put(mutation);
+        } catch (InterruptedException ex) {
+            pending.decrementAndGet();
+            Thread.currentThread().interrupt();
+            mutation.future().completeExceptionally(ex);
+        }
+        return mutation.future();
+    }
+
+    private void run() {
+        var batch = new ArrayList<Mutation<ID>>(BATCH_SIZE);
+        while (true) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                execute(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                log.error("执行修改队列异常 {}", name, ex);
+            } finally {
+                pending.addAndGet(-batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 按顺序执行，连续的删除合并执行
+     */
+    private void execute(List<Mutation<ID>> batch) {
+        var deletes = new ArrayList<Mutation<ID>>();
+        for (var mutation : batch) {
+            if (mutation.delete()) {
+                deletes.add(mutation);
+            } else {
+                executeDeletes(deletes);
+                try {
+                    evict.accept(mutation.id());
+                    mutation.future().complete(null);
+                } catch (Exception ex) {
+                    log.error("删除缓存失败 {}, {}", name, mutation.id(), ex);
+                    mutation.future().completeExceptionally(ex);
+                }
+            }
+        }
+        executeDeletes(deletes);
+    }
+
+    private void executeDeletes(List<Mutation<ID>> deletes) {
+        if (deletes.isEmpty()) {
+            return;
+        }
+        try {
+            deleteBatch.accept(deletes.stream().map(Mutation::id).toList());
+            deletes.forEach(e -> e.future().complete(null));
+        } catch (Exception ex) {
+            log.error("批量删除失败 {}, 数量 = {}", name, deletes.size(), ex);
+            deletes.forEach(e -> e.future().completeExceptionally(ex));
+        }
+        deletes.clear();
+    }
+
+    void awaitEmpty() {
+        var deadline = System.currentTimeMillis() + SHUTDOWN_WAIT_MS;
+        while (pending.get() > 0 && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        if (pending.get() > 0) {
+            log.error("修改队列未执行完成 {}, 数量 = {}", name, pending.get());
+        }
+    }
+
+    /**
+     * @param id     主键
+     * @param delete true: 删除数据库和缓存，false: 入库后删除缓存
+     * @param future 完成通知
+     */
+    record Mutation<ID>(ID id, boolean delete, CompletableFuture<Void> future) {
+    }
+}
@@ -1,8 +1,13 @@
 package org.manaslu.cache.core;
 
 import javax.annotation.Nonnull;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * 获取数据接
@@ -13,11 +18,49 @@ import java.util.Optional;
 public sealed interface Repository<ID extends Comparable<ID>, E extends AbstractEntity<ID>> permits RepositoryImpl {
 
     /**
-     * 缓存中数据
+     * 缓存中数据，会复制所有数据，数据量大时使用forEachCached或streamCached
      */
     @Nonnull
     List<E> listFromCache();
 
+    /**
+     * 遍历缓存中数据，不复制
+     * 弱一致性: 遍历期间的新增和删除可能可见也可能不可见，每个数据最多出现一次，不会抛出ConcurrentModificationException
+     */
+    void forEachCached(@Nonnull Consumer<? super E> action);
+
+    /**
+     * 缓存中数据的流，不复制，一致性同forEachCached
+     *
+     * @param parallel 是否并行
+     */
+    @Nonnull
+    Stream<E> streamCached(boolean parallel);
+
+    /**
+     * 在公共ForkJoinPool中并行遍历缓存中数据，阻塞直到完成，一致性同forEachCached
+     * action需要线程安全
+     */
+    void parallelForEachCached(@Nonnull Consumer<? super E> action);
+
+    /**
+     * 按@Index索引查询缓存中数据，不查询数据库
+     *
+     * @param index 索引名
+     * @param key   索引值，类型需与字段类型一致
+     */
+    @Nonnull
+    List<E> findBy(@Nonnull String index, @Nonnull Object key);
+
+    /**
+     * 按@Index索引查询缓存中一个数据，用于唯一索引
+     *
+     * @param index 索引名
+     * @param key   索引值，类型需与字段类型一致
+     */
+    @Nonnull
+    Optional<E> findOneBy(@Nonnull String index, @Nonnull Object key);
+
     /**
      * 取数据
      * 首先从缓存取，没有会去查询数据库
@@ -27,6 +70,16 @@ public sealed interface Repository<ID extends Comparable<ID>, E extends Abstract
      */
     Optional<E> load(ID id);
 
+    /**
+     * 批量取数据
+     * 缓存中没有的数据，一次性从数据库查询
+     *
+     * @param ids 主键
+     * @return 查到的数据，不存在的主键不会出现在结果中
+     */
+    @Nonnull
+    Map<ID, E> loadAll(@Nonnull Collection<ID> ids);
+
     /**
      * 取数据
      * 强制从数据库取，在刷新缓存
@@ -41,18 +94,85 @@ public sealed interface Repository<ID extends Comparable<ID>, E extends Abstract
      */
     E create(@Nonnull E entity);
 
+    /**
+     * 批量创建实体，一次访问数据库
+     *
+     * @return 与传入顺序对应的增强实体
+     */
+    @Nonnull
+    List<E> createAll(@Nonnull List<E> entities);
+
+    /**
+     * 异步取数据
+     * 缓存命中时直接返回已完成的结果，否则在虚拟线程中查询数据库
+     *
+     * @param id 主键
+     * @return 对应的值
+     */
+    CompletableFuture<Optional<E>> loadAsync(ID id);
+
+    /**
+     * 异步批量取数据
+     * 全部缓存命中时直接返回已完成的结果
+     *
+     * @param ids 主键
+     * @return 查到的数据，不存在的主键不会出现在结果中
+     */
+    CompletableFuture<Map<ID, E>> loadAllAsync(@Nonnull Collection<ID> ids);
+
+    /**
+     * 异步创建实体
+     */
+    CompletableFuture<E> createAsync(@Nonnull E entity);
+
+    /**
+     * 异步入库
+     */
+    CompletableFuture<Void> flushAsync(ID id);
+
     /**
      * 删除数据
+     * 立即从缓存移除，数据库删除在异步队列中执行，同一个主键按调用顺序执行
+     *
+     * @return 数据库删除完成
      */
-    void delete(ID id);
+    CompletableFuture<Void> delete(ID id);
 
     /**
      * 只删除缓存数据，删除前会更新到数据库
+     * 在异步队列中执行，同一个主键按调用顺序执行
+     *
+     * @return 删除完成
      */
-    void deleteOnlyCache(ID id);
+    CompletableFuture<Void> deleteOnlyCache(ID id);
 
     /**
      * 立即入库
      */
     void flushToDb(ID id);
+
+    /**
+     * 不存在主键过滤统计
+     */
+    MissingIdStats missingIdStats();
+
+    /**
+     * 缓存统计，按大小淘汰时包含估算的占用字节数
+     */
+    CacheStats cacheStats();
+
+    /**
+     * 冷数据层统计，未启用时全为0
+     */
+    ColdTierStats coldTierStats();
+
+    /**
+     * 命中、数据库耗时和队列长度等运行指标
+     */
+    RepositoryMetrics metrics();
+
+    /**
+     * 延迟入库统计，立即入库时全为0
+     */
+    DumpStats dumpStats();
 }
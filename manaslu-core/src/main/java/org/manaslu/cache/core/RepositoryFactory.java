@@ -1,15 +1,17 @@
 package org.manaslu.cache.core;
 
+import lombok.extern.slf4j.Slf4j;
 import org.manaslu.cache.core.annotations.Entity;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.locks.StampedLock;
+import java.util.function.ToLongFunction;
 
+@Slf4j
 public class RepositoryFactory {
 
+    private final EntityTypeManager entityTypeManager;
     private final EntityEnhanceCreator entityEnhanceCreator;
     private final DbOperatorFactory dbOperatorFactory;
     /**
@@ -18,10 +20,19 @@ public class RepositoryFactory {
     private final ScheduledExecutorService scheduledThreadPoolExecutor;
 
     private final Map<Class<?>, Repository<?, ?>> cache = new HashMap<>();
+    /**
+     * 需要预热的类型
+     */
+    private final Set<Class<?>> warmUpTypes = new LinkedHashSet<>();
     private final StampedLock stampedLock = new StampedLock();
+    /**
+     * 指标扩展
+     */
+    private final List<MetricsListener> metricsListeners = new ArrayList<>();
 
     public RepositoryFactory(EntityTypeManager entityTypeManager, DbOperatorFactory dbOperatorFactory,
                              ScheduledExecutorService scheduledThreadPoolExecutor) {
+        this.entityTypeManager = entityTypeManager;
         this.entityEnhanceCreator = new EntityEnhanceCreator(entityTypeManager);
         this.dbOperatorFactory = dbOperatorFactory;
         this.scheduledThreadPoolExecutor = scheduledThreadPoolExecutor;
@@ -51,33 +62,145 @@ public class RepositoryFactory {
             }
             var repository = createRepository(entityType);
             cache.put(entityType, repository);
+            for (var listener : metricsListeners) {
+                listener.onRepositoryCreated(entityType, repository);
+            }
             return repository;
         } finally {
             stampedLock.unlockWrite(writeLock);
         }
     }
 
+    /**
+     * 注册指标扩展，已创建的存储类立即回调
+     */
+    public void addMetricsListener(MetricsListener listener) {
+        var writeLock = stampedLock.writeLock();
+        try {
+            metricsListeners.add(listener);
+            cache.forEach(listener::onRepositoryCreated);
+        } finally {
+            stampedLock.unlockWrite(writeLock);
+        }
+    }
+
+    /**
+     * 预热所有已创建且配置了预热的存储类，阻塞直到完成
+     *
+     * @param parallelism 每个类型预热的并行数
+     * @return 预热总数量
+     */
+    public long warmUp(int parallelism) {
+        Map<Class<?>, Repository<?, ?>> repositories = new LinkedHashMap<>();
+        var readLock = stampedLock.readLock();
+        try {
+            warmUpTypes.forEach(type -> repositories.put(type, cache.get(type)));
+        } finally {
+            stampedLock.unlockRead(readLock);
+        }
+        long total = 0;
+        for (var entry : repositories.entrySet()) {
+            total += ((RepositoryImpl<?, ?>) entry.getValue()).warmUp(entry.getKey().getSimpleName(), parallelism);
+        }
+        return total;
+    }
+
     <ID extends Comparable<ID>, E extends AbstractEntity<ID>> Repository<ID, E> createRepository(Class<E> entityType) {
         var proxyClass = entityEnhanceCreator.getProxyClass(entityType);
         var annotation = Objects.requireNonNull(proxyClass.getAnnotation(Entity.class));
+        var typeInfo = entityTypeManager.getInfo(entityType);
+        // int/long主键使用原始类型的哈希表
+        ToLongFunction<ID> keyFunction = LongHashMap.keyFunction(typeInfo.id().getType());
         var cache = annotation.cacheStrategy();
         var dump = annotation.dumpStrategy();
         CacheStrategy<ID, E> cacheStrategy;
         DumpStrategy<ID, E> dumpStrategy;
+        var maxWeightBytes = annotation.lruMaxWeightBytes();
+        EntityWeigher<E> weigher = maxWeightBytes > 0 ? new EntityWeigher<>(typeInfo) : null;
         switch (cache) {
-            case LRU -> cacheStrategy = new LRUCacheStrategy<>(annotation.lruMaxSize(), annotation.lruMaxExpireTime());
-            case PERSIST -> cacheStrategy = new PersistCacheStrategy<>();
+            case LRU -> {
+                if (annotation.lruRefreshAheadTime() > 0) {
+                    cacheStrategy = new RefreshAheadCacheStrategy<>(annotation.lruMaxSize(), annotation.lruMaxExpireTime(), annotation.lruRefreshAheadTime(), maxWeightBytes, weigher);
+                } else {
+                    cacheStrategy = new LRUCacheStrategy<>(annotation.lruMaxSize(), annotation.lruMaxExpireTime(), maxWeightBytes, weigher);
+                }
+            }
+            case TINY_LFU ->
+                    cacheStrategy = new TinyLfuCacheStrategy<>(annotation.lruMaxSize(), annotation.lruMaxExpireTime(), maxWeightBytes, weigher);
+            case PERSIST -> cacheStrategy = keyFunction != null ? new LongPersistCacheStrategy<>(keyFunction) : new PersistCacheStrategy<>();
             default -> cacheStrategy = new NoCacheStrategy<>();
         }
-        var dbOperator = dbOperatorFactory.create(entityType);
+        var metrics = new RepositoryMetrics();
+        var dbOperator = new MeteredDbOperator<>(dbOperatorFactory.<ID, E>create(entityType), metrics);
+        if ((annotation.warmUp() || annotation.bloomFilter()) && !dbOperator.supportsScan()) {
+            throw new IllegalStateException("预热和布隆过滤器需要数据库操作支持遍历 " + entityType.getName());
+        }
+        if (annotation.warmUp()) {
+            if (cache == Entity.CacheStrategy.PERSIST) {
+                warmUpTypes.add(entityType);
+            } else {
+                log.warn("只有PERSIST缓存策略支持预热 {}", entityType.getName());
+            }
+        }
+        var batchSize = annotation.dumpBatchSize();
+        var maxDirtyCount = annotation.maxDirtyCount();
+        Snapshots<ID, E> snapshots = Snapshots.disabled();
+        if (annotation.flushSnapshot()) {
+            if (dump == Entity.DumpStrategy.IMMEDIATE) {
+                log.warn("立即入库在修改线程写入, 不需要快照 {}", entityType.getName());
+            } else {
+                snapshots = new Snapshots<>(typeInfo);
+            }
+        }
+        Journal<ID, E> journal = Journal.disabled();
+        if (!annotation.journalDir().isEmpty()) {
+            if (dump == Entity.DumpStrategy.IMMEDIATE) {
+                log.warn("立即入库不需要预写日志 {}", entityType.getName());
+            } else {
+                if (!dbOperator.supportsEncode()) {
+                    throw new IllegalStateException("预写日志需要数据库操作支持序列化 " + entityType.getName());
+                }
+                journal = new Journal<>(annotation.journalDir(), entityType.getName(), dbOperator::encode, dbOperator::decode, snapshots,
+                        annotation.journalSyncTime(), scheduledThreadPoolExecutor);
+                // 在第一次加载之前回放上次未入库的修改
+                var replayed = journal.replay(batchSize, dbOperator::updateAll);
+                if (replayed > 0) {
+                    log.info("回放预写日志 {}, 数量 = {}", entityType.getName(), replayed);
+                }
+            }
+        }
+        Fingerprints<ID, E> fingerprints = Fingerprints.disabled();
+        if (annotation.changeDetection()) {
+            if (dump == Entity.DumpStrategy.IMMEDIATE) {
+                log.warn("只有延迟入库支持变化检测 {}", entityType.getName());
+            } else {
+                fingerprints = new Fingerprints<>(typeInfo);
+            }
+        }
         switch (dump) {
             case IMMEDIATE -> dumpStrategy = new ImmediateDumpStrategy<>(dbOperator);
-            case INTERVAL ->
-                    dumpStrategy = new IntervalDumpStrategy<>(annotation.intervalScheduleTime(), dbOperator, scheduledThreadPoolExecutor);
-            case COUNTER -> dumpStrategy = new CountDumpStrategy<>(annotation.maxCountTriggerDump(), dbOperator);
+            case INTERVAL -> dumpStrategy = new IntervalDumpStrategy<>(annotation.intervalScheduleTime(), dbOperator, keyFunction, batchSize,
+                    maxDirtyCount, journal, fingerprints, snapshots, scheduledThreadPoolExecutor);
+            case COUNTER -> dumpStrategy = new CountDumpStrategy<>(annotation.maxCountTriggerDump(), dbOperator, keyFunction, batchSize,
+                    maxDirtyCount, journal, fingerprints, snapshots);
             default ->
-                    dumpStrategy = new CountIntervalDumpStrategy<>(annotation.intervalScheduleTime(), annotation.maxCountTriggerDump(), dbOperator, scheduledThreadPoolExecutor);
+                    dumpStrategy = new CountIntervalDumpStrategy<>(annotation.intervalScheduleTime(), annotation.maxCountTriggerDump(), dbOperator, keyFunction,
+                            batchSize, maxDirtyCount, journal, fingerprints, snapshots, scheduledThreadPoolExecutor);
+        }
+        ColdTier<ID, E> coldTier = ColdTier.disabled();
+        if (annotation.coldTierMaxBytes() > 0) {
+            if (cache == Entity.CacheStrategy.LRU || cache == Entity.CacheStrategy.TINY_LFU) {
+                if (!dbOperator.supportsEncode()) {
+                    throw new IllegalStateException("冷数据层需要数据库操作支持序列化 " + entityType.getName());
+                }
+                coldTier = new ColdTier<>(annotation.coldTierMaxBytes(), annotation.coldTierFile(), dbOperator::encode, dbOperator::decode);
+            } else {
+                log.warn("只有LRU和TINY_LFU缓存策略支持冷数据层 {}", entityType.getName());
+            }
         }
-        return new RepositoryImpl<>(cacheStrategy, dumpStrategy, entityEnhanceCreator);
+        var missingIdFilter = new MissingIdFilter<>(annotation.negativeCacheExpireTime(), annotation.negativeCacheMaxSize(),
+                annotation.bloomFilter() ? dbOperator : null, annotation.bloomFilterExpectedSize(), annotation.bloomFilterFpp());
+        return new RepositoryImpl<>(cacheStrategy, dumpStrategy, entityEnhanceCreator, missingIdFilter,
+                EntityIndexes.of(typeInfo), coldTier, metrics, RepositoryOptions.of(entityType, annotation));
     }
 }
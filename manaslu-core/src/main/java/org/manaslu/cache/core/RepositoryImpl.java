@@ -4,9 +4,23 @@ import lombok.extern.slf4j.Slf4j;
 import org.manaslu.cache.core.exception.ManasluException;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Slf4j
 final class RepositoryImpl<ID extends Comparable<ID>, E extends AbstractEntity<ID>> implements Repository<ID, E> {
@@ -17,15 +31,90 @@ final class RepositoryImpl<ID extends Comparable<ID>, E extends AbstractEntity<I
 
     private final EntityEnhanceCreator entityEnhanceCreator;
 
+    /**
+     * 异步操作执行器
+     */
+    private final Executor executor;
+
     private final StampedLock lock = new StampedLock();
 
+    /**
+     * 正在从数据库加载的数据
+     */
+    private final Map<ID, CompletableFuture<Optional<E>>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * 过滤不存在的主键
+     */
+    private final MissingIdFilter<ID> missingIdFilter;
+
+    /**
+     * 异步删除队列
+     */
+    private final MutationQueue<ID> mutationQueue;
+
+    /**
+     * 已从缓存移除，等待从数据库删除的数据
+     */
+    private final Map<ID, CompletableFuture<Void>> pendingDeletes = new ConcurrentHashMap<>();
+
+    /**
+     * 正在只删除缓存的数据，已经入库，卸载时不再放入入库队列
+     */
+    private final Set<ID> pendingEvicts = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 缓存数据的二级索引
+     */
+    private final EntityIndexes<ID, E> indexes;
+
+    /**
+     * 淘汰数据的冷数据层
+     */
+    private final ColdTier<ID, E> coldTier;
+
+    /**
+     * 淘汰数据的入库队列
+     */
+    private final EvictionQueue<ID, E> evictionQueue;
+
+    private final RepositoryMetrics metrics;
+
     RepositoryImpl(@Nonnull CacheStrategy<ID, E> cacheStrategy, @Nonnull DumpStrategy<ID, E> dumpStrategy,
-                   @Nonnull EntityEnhanceCreator entityEnhanceCreator) {
+                   @Nonnull EntityEnhanceCreator entityEnhanceCreator, @Nonnull MissingIdFilter<ID> missingIdFilter,
+                   @Nonnull EntityIndexes<ID, E> indexes, @Nonnull ColdTier<ID, E> coldTier,
+                   @Nonnull RepositoryMetrics metrics, @Nonnull RepositoryOptions options) {
         this.cacheStrategy = cacheStrategy;
         this.dumpStrategy = dumpStrategy;
         this.entityEnhanceCreator = entityEnhanceCreator;
-        // 淘汰时， 刷新数据库
-        this.cacheStrategy.addRemoveCallback(e -> flushToDb(e.id()));
+        this.executor = new VirtualThreadExecutor("manaslu-" + options.name(), options.asyncMaxConcurrency(), options.asyncQueueCapacity());
+        this.missingIdFilter = missingIdFilter;
+        this.indexes = indexes;
+        this.coldTier = coldTier;
+        this.mutationQueue = new MutationQueue<>(options.name(), options.mutationQueueCapacity(), this::deleteBatch, this::evict);
+        this.evictionQueue = new EvictionQueue<>(options.name(), options.evictionQueueCapacity(), this::flushEvicted);
+        this.metrics = metrics;
+        metrics.bind(dumpStrategy::dirtyCount, evictionQueue::size);
+        // 淘汰时放入入库队列，等待删除和只删除缓存的数据不需要刷新
+        this.cacheStrategy.addRemoveCallback(e -> {
+            if (!pendingDeletes.containsKey(e.id()) && !pendingEvicts.contains(e.id())) {
+                evictionQueue.submit(e);
+            }
+        });
+        // 被替换的数据同步入库，未入库的修改不能与新对象的修改合并
+        this.cacheStrategy.addReplaceCallback(e -> flushToDb(e.id()));
+        this.cacheStrategy.setRefresher(this::refresh, executor);
+        // 入库后按修改后的大小重新估算权重
+        this.dumpStrategy.addFlushCallback(this.cacheStrategy::reweigh);
+        // 重新放入缓存后冷数据层中的数据过期
+        if (coldTier.enabled()) {
+            this.cacheStrategy.addPutCallback(e -> coldTier.invalidate(e.id()));
+        }
+        // 索引跟随缓存建立和删除
+        if (!indexes.isEmpty()) {
+            this.cacheStrategy.addPutCallback(indexes::add);
+            this.cacheStrategy.addRemoveCallback(indexes::remove);
+        }
     }
 
     @Nonnull
@@ -34,63 +123,214 @@ final class RepositoryImpl<ID extends Comparable<ID>, E extends AbstractEntity<I
         return cacheStrategy.list();
     }
 
+    @Override
+    public void forEachCached(@Nonnull Consumer<? super E> action) {
+        cacheStrategy.forEach(action);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<E> streamCached(boolean parallel) {
+        return StreamSupport.stream(cacheStrategy.spliterator(), parallel);
+    }
+
+    @Override
+    public void parallelForEachCached(@Nonnull Consumer<? super E> action) {
+        streamCached(true).forEach(action);
+    }
+
+    @Nonnull
+    @Override
+    public List<E> findBy(@Nonnull String index, @Nonnull Object key) {
+        return indexes.find(index, key);
+    }
+
+    @Nonnull
+    @Override
+    public Optional<E> findOneBy(@Nonnull String index, @Nonnull Object key) {
+        return indexes.findOne(index, key);
+    }
+
     @Override
     public Optional<E> load(ID id) {
-        Optional<E> e;
-        var readStamp = lock.readLock();
-        try {
-            e = cacheStrategy.get(id);
-        } finally {
-            lock.unlockRead(readStamp);
-        }
+        var e = cacheStrategy.get(id);
         if (e.isPresent()) {
+            metrics.hit();
             return e;
         }
-        var writeLock = lock.writeLock();
+        metrics.miss();
+        if (missingIdFilter.definitelyMissing(id)) {
+            return Optional.empty();
+        }
+        return loadSingleFlight(id, false);
+    }
+
+    @Override
+    public Optional<E> loadFromDb(ID id) {
+        return loadSingleFlight(id, true);
+    }
+
+    /**
+     * 同一个ID同时只有一个线程查询数据库，其他线程等待结果
+     * 不同ID之间互不阻塞
+     *
+     * @param id    主键
+     * @param force 是否强制从数据库取
+     */
+    private Optional<E> loadSingleFlight(ID id, boolean force) {
+        if (pendingDeletes.containsKey(id)) {
+            return Optional.empty();
+        }
+        var future = new CompletableFuture<Optional<E>>();
+        var exist = loading.putIfAbsent(id, future);
+        if (exist != null) {
+            return await(exist);
+        }
         try {
-            e = cacheStrategy.get(id);
-            if (e.isPresent()) {
-                return e;
+            Optional<E> e = force ? Optional.empty() : cacheStrategy.get(id);
+            if (e.isEmpty()) {
+                // 淘汰后等待入库的数据直接放回缓存，强制从数据库取时先把缓存中和淘汰的数据入库再查询
+                var evicted = evictionQueue.take(id);
+                if (force) {
+                    flushToDb(id);
+                }
+                e = force ? Optional.empty() : evicted;
+                if (e.isEmpty()) {
+                    // 强制从数据库取时不使用冷数据
+                    e = (force ? Optional.<E>empty() : coldTier.take(id))
+                            .or(() -> dumpStrategy.select(id))
+                            .map(find -> entityEnhanceCreator.create(find, cacheStrategy, dumpStrategy, indexes));
+                }
+                // 查询期间被删除
+                if (pendingDeletes.containsKey(id)) {
+                    e = Optional.empty();
+                }
+                cacheIfLoading(id, future, e, force);
             }
-            e = dumpStrategy.select(id)
-                    .map(find -> entityEnhanceCreator.create(find, cacheStrategy, dumpStrategy));
+            future.complete(e);
+            return e;
+        } catch (Exception ex) {
+            future.completeExceptionally(ex);
+            log.error("加载数据错误", ex);
+            throw ex instanceof ManasluException me ? me : new ManasluException(ex);
         } finally {
-            lock.unlockWrite(writeLock);
+            loading.remove(id, future);
         }
-        return e;
     }
 
+    @Nonnull
     @Override
-    public Optional<E> loadFromDb(ID id) {
-        Optional<E> e;
-        var writeLock = lock.writeLock();
-        try {
-            e = dumpStrategy.select(id)
-                    .map(find -> entityEnhanceCreator.create(find, cacheStrategy, dumpStrategy));
+    public Map<ID, E> loadAll(@Nonnull Collection<ID> ids) {
+        var result = new HashMap<ID, E>(ids.size());
+        // 由本线程负责加载
+        var owned = new HashMap<ID, CompletableFuture<Optional<E>>>();
+        // 其他线程正在加载
+        var waiting = new HashMap<ID, CompletableFuture<Optional<E>>>();
+        for (ID id : ids) {
+            if (result.containsKey(id) || owned.containsKey(id) || waiting.containsKey(id)) {
+                continue;
+            }
+            var e = cacheStrategy.get(id);
             if (e.isPresent()) {
-                cacheStrategy.put(e.get());
+                metrics.hit();
+                result.put(id, e.get());
+                continue;
+            }
+            metrics.miss();
+            if (missingIdFilter.definitelyMissing(id) || pendingDeletes.containsKey(id)) {
+                continue;
+            }
+            var future = new CompletableFuture<Optional<E>>();
+            var exist = loading.putIfAbsent(id, future);
+            if (exist != null) {
+                waiting.put(id, exist);
+                continue;
+            }
+            // 注册期间可能已经被其他线程加载完成
+            e = cacheStrategy.get(id);
+            if (e.isPresent()) {
+                loading.remove(id, future);
+                future.complete(e);
+                result.put(id, e.get());
             } else {
-                cacheStrategy.delete(id);
+                owned.put(id, future);
             }
-        } finally {
-            lock.unlockWrite(writeLock);
         }
-        return e;
+        if (!owned.isEmpty()) {
+            try {
+                // 等待入库的淘汰数据已经是增强对象
+                var evicted = new HashMap<ID, E>();
+                var found = new HashMap<ID, E>();
+                var query = new ArrayList<ID>(owned.size());
+                for (ID id : owned.keySet()) {
+                    var e = evictionQueue.take(id);
+                    if (e.isPresent()) {
+                        evicted.put(id, e.get());
+                    } else {
+                        coldTier.take(id).ifPresentOrElse(v -> found.put(id, v), () -> query.add(id));
+                    }
+                }
+                if (!query.isEmpty()) {
+                    found.putAll(dumpStrategy.selectAll(query));
+                }
+                owned.forEach((id, future) -> {
+                    var e = pendingDeletes.containsKey(id) ? Optional.<E>empty() : Optional.ofNullable(evicted.get(id))
+                            .or(() -> Optional.ofNullable(found.get(id))
+                                    .map(find -> entityEnhanceCreator.create(find, cacheStrategy, dumpStrategy, indexes)));
+                    cacheIfLoading(id, future, e, false);
+                    future.complete(e);
+                    e.ifPresent(v -> result.put(id, v));
+                });
+            } catch (Exception ex) {
+                owned.values().forEach(future -> future.completeExceptionally(ex));
+                log.error("批量加载数据错误", ex);
+                throw ex instanceof ManasluException me ? me : new ManasluException(ex);
+            } finally {
+                owned.forEach(loading::remove);
+            }
+        }
+        waiting.forEach((id, future) -> await(future).ifPresent(e -> result.put(id, e)));
+        return result;
+    }
+
+    /**
+     * 仍在加载中才放入缓存，删除或新增时会移除加载标记，防止放入过期的结果
+     */
+    private void cacheIfLoading(ID id, CompletableFuture<Optional<E>> future, Optional<E> e, boolean force) {
+        loading.computeIfPresent(id, (k, v) -> {
+            if (v == future) {
+                if (e.isPresent()) {
+                    cacheStrategy.put(e.get());
+                    missingIdFilter.markExisting(id);
+                } else {
+                    if (force) {
+                        cacheStrategy.delete(id);
+                        coldTier.invalidate(id);
+                    }
+                    missingIdFilter.markMissing(id);
+                }
+            }
+            return v;
+        });
+    }
+
+    private Optional<E> await(CompletableFuture<Optional<E>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof ManasluException me ? me : new ManasluException(ex.getCause());
+        }
     }
 
     @Override
     public E create(@Nonnull E entity) {
+        awaitPendingDelete(entity);
         var writeLock = lock.writeLock();
         E e;
         try {
             // 新增时直接入库
             var id = dumpStrategy.insert(entity);
-            if (entity.id() == null && id.isPresent()) {
-                e = entityEnhanceCreator.create(id.get(), entity, cacheStrategy, dumpStrategy);
-            } else {
-                e = entityEnhanceCreator.create(entity, cacheStrategy, dumpStrategy);
-            }
-            cacheStrategy.put(e);
+            e = created(entity, id);
         } catch (Exception ex) {
             log.error("新增数据错误", ex);
             throw new ManasluException(ex);
@@ -101,40 +341,284 @@ final class RepositoryImpl<ID extends Comparable<ID>, E extends AbstractEntity<I
         return e;
     }
 
+    @Nonnull
     @Override
-    public void delete(ID id) {
-        Thread.startVirtualThread(() -> {
-            var writeLock = lock.writeLock();
-            try {
-                cacheStrategy.delete(id);
-                // 删除时直接入库
-                dumpStrategy.delete(id);
-            } catch (Exception ex) {
-                log.error("删除数据错误", ex);
-                throw new ManasluException(ex);
-            } finally {
-                lock.unlockWrite(writeLock);
+    public List<E> createAll(@Nonnull List<E> entities) {
+        if (entities.isEmpty()) {
+            return List.of();
+        }
+        entities.forEach(this::awaitPendingDelete);
+        var writeLock = lock.writeLock();
+        var result = new ArrayList<E>(entities.size());
+        try {
+            // 新增时直接入库
+            var ids = dumpStrategy.insertAll(entities);
+            for (int i = 0; i < entities.size(); i++) {
+                result.add(created(entities.get(i), ids.get(i)));
             }
+        } catch (Exception ex) {
+            log.error("批量新增数据错误", ex);
+            throw new ManasluException(ex);
+        } finally {
+            lock.unlockWrite(writeLock);
+        }
+        return result;
+    }
+
+    /**
+     * 等待相同主键的删除完成
+     */
+    private void awaitPendingDelete(E entity) {
+        if (entity.id() != null) {
+            var pending = pendingDeletes.get(entity.id());
+            if (pending != null) {
+                pending.exceptionally(ex -> null).join();
+            }
+        }
+    }
+
+    /**
+     * 入库后创建增强对象并放入缓存
+     *
+     * @param entity 原始数据
+     * @param id     数据库生成的主键
+     */
+    private E created(E entity, Optional<ID> id) {
+        E e;
+        if (entity.id() == null && id.isPresent()) {
+            e = entityEnhanceCreator.create(id.get(), entity, cacheStrategy, dumpStrategy, indexes);
+        } else {
+            e = entityEnhanceCreator.create(entity, cacheStrategy, dumpStrategy, indexes);
+        }
+        // 取消正在进行的加载，防止不存在的结果被记录
+        loading.remove(e.id());
+        missingIdFilter.markExisting(e.id());
+        cacheStrategy.put(e);
+        return e;
+    }
+
+    @Override
+    public CompletableFuture<Optional<E>> loadAsync(ID id) {
+        var e = cacheStrategy.get(id);
+        if (e.isPresent()) {
+            metrics.hit();
+            return CompletableFuture.completedFuture(e);
+        }
+        metrics.miss();
+        if (missingIdFilter.definitelyMissing(id)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return supplyAsync(() -> loadSingleFlight(id, false));
+    }
+
+    @Override
+    public CompletableFuture<Map<ID, E>> loadAllAsync(@Nonnull Collection<ID> ids) {
+        var result = new HashMap<ID, E>(ids.size());
+        int hits = 0;
+        int misses = 0;
+        for (ID id : ids) {
+            var e = cacheStrategy.get(id);
+            if (e.isPresent()) {
+                result.put(id, e.get());
+                hits++;
+            } else if (!missingIdFilter.definitelyMissing(id)) {
+                // 由loadAll统计
+                return supplyAsync(() -> loadAll(ids));
+            } else {
+                misses++;
+            }
+        }
+        metrics.hits(hits, misses);
+        return CompletableFuture.completedFuture(result);
+    }
+
+    @Override
+    public CompletableFuture<E> createAsync(@Nonnull E entity) {
+        return supplyAsync(() -> create(entity));
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync(ID id) {
+        return supplyAsync(() -> {
+            flushToDb(id);
+            return null;
         });
     }
 
+    /**
+     * 异步执行，等待队列满时返回失败的结果
+     */
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, executor);
+        } catch (RejectedExecutionException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
     @Override
-    public void deleteOnlyCache(ID id) {
-        Thread.startVirtualThread(() -> {
-            var writeLock = lock.writeLock();
-            try {
-                // 先入库
-                dumpStrategy.flush(id);
-                // 在删除
-                cacheStrategy.delete(id);
-            } finally {
-                lock.unlockWrite(writeLock);
+    public CompletableFuture<Void> delete(ID id) {
+        var future = new CompletableFuture<Void>();
+        // 先标记等待删除，之后的加载不会再查询数据库
+        pendingDeletes.put(id, future);
+        // 取消正在进行的加载，防止旧数据重新放入缓存
+        loading.remove(id);
+        cacheStrategy.delete(id);
+        evictionQueue.discard(id);
+        coldTier.invalidate(id);
+        mutationQueue.delete(id).whenComplete((r, ex) -> {
+            pendingDeletes.remove(id, future);
+            if (ex != null) {
+                future.completeExceptionally(ex);
+            } else {
+                future.complete(null);
             }
         });
+        return future;
+    }
+
+    /**
+     * 删除队列中批量删除数据库数据
+     */
+    private void deleteBatch(List<ID> ids) {
+        dumpStrategy.deleteAll(ids);
+        for (ID id : ids) {
+            loading.remove(id);
+            cacheStrategy.delete(id);
+            coldTier.invalidate(id);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteOnlyCache(ID id) {
+        return mutationQueue.evict(id);
+    }
+
+    /**
+     * 删除队列中入库后删除缓存，不放入入库队列和冷数据层
+     */
+    private void evict(ID id) {
+        pendingEvicts.add(id);
+        try {
+            // 先入库
+            dumpStrategy.flush(id);
+            // 在删除
+            cacheStrategy.delete(id);
+        } finally {
+            pendingEvicts.remove(id);
+        }
+        // 之前淘汰的数据已随入库写入数据库
+        evictionQueue.discard(id);
+        coldTier.invalidate(id);
     }
 
     @Override
     public void flushToDb(ID id) {
         dumpStrategy.flush(id);
     }
+
+    /**
+     * 入库队列中处理淘汰的数据，先刷新数据库，成功后再存入冷数据层
+     * 期间被取回或删除的数据不放入冷数据层；先放入再检查，重新放入缓存时的清除不会被覆盖
+     */
+    private void flushEvicted(E e) {
+        var id = e.id();
+        if (pendingDeletes.containsKey(id)) {
+            return;
+        }
+        flushToDb(id);
+        if (!coldTier.enabled()) {
+            return;
+        }
+        coldTier.put(e);
+        if (!evictionQueue.isPending(e) || pendingDeletes.containsKey(id) || cacheStrategy.get(id).isPresent()) {
+            coldTier.invalidate(id);
+        }
+    }
+
+    /**
+     * 预热，流式读取数据库所有数据放入缓存
+     *
+     * @param name        名称
+     * @param parallelism 并行数
+     * @return 预热数量
+     */
+    long warmUp(String name, int parallelism) {
+        return new CacheWarmer<>(name, dumpStrategy, this::warmUpPut).warmUp(parallelism);
+    }
+
+    /**
+     * 正在加载的数据由加载线程放入缓存，已经在缓存中的数据不覆盖，等待删除的数据不放入
+     */
+    private void warmUpPut(E raw) {
+        var id = raw.id();
+        var e = entityEnhanceCreator.create(raw, cacheStrategy, dumpStrategy, indexes);
+        loading.compute(id, (k, v) -> {
+            // 删除先标记再移除加载标记，在同一个compute中检查不会放入已删除的数据
+            if (v == null && !pendingDeletes.containsKey(id)) {
+                cacheStrategy.putIfAbsent(e);
+                missingIdFilter.markExisting(id);
+            }
+            return v;
+        });
+    }
+
+    /**
+     * 后台刷新缓存，把数据库中的数据复制到缓存中的对象，有未入库的更新时跳过，防止覆盖未入库的修改
+     * 查询后通过修改计数确认期间没有修改，复制期间开始的修改等待复制完成
+     *
+     * @return 是否刷新
+     */
+    private boolean refresh(E entity) {
+        var id = entity.id();
+        var raw = entity.entity();
+        // 先取修改计数再检查，之后开始的修改都会使计数变化
+        var stamp = raw.mutationStamp();
+        if ((int) stamp != 0 || dumpStrategy.isDirty(id)) {
+            return false;
+        }
+        var find = dumpStrategy.select(id);
+        // 查询期间有修改时不覆盖
+        if (find.isEmpty() || !raw.tryBeginRefresh(stamp)) {
+            return false;
+        }
+        try {
+            // 取计数前完成的修改可能刚刚标记
+            if (dumpStrategy.isDirty(id)) {
+                return false;
+            }
+            entityEnhanceCreator.refresh(entity, find.get());
+            // 数据库中的值可能已被外部修改，上次入库的指纹不再可信
+            raw.fingerprints = null;
+        } finally {
+            raw.endRefresh();
+        }
+        indexes.refresh(entity);
+        return true;
+    }
+
+    @Override
+    public MissingIdStats missingIdStats() {
+        return missingIdFilter.stats();
+    }
+
+    @Override
+    public CacheStats cacheStats() {
+        return cacheStrategy.stats();
+    }
+
+    @Override
+    public ColdTierStats coldTierStats() {
+        return coldTier.stats();
+    }
+
+    @Override
+    public RepositoryMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public DumpStats dumpStats() {
+        return dumpStrategy.stats();
+    }
 }
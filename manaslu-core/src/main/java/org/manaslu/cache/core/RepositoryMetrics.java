@@ -0,0 +1,105 @@
+package org.manaslu.cache.core;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * 存储类运行指标，命中和数据库操作按次累计，队列长度实时读取
+ * 记录只有LongAdder累加，不影响缓存命中路径的性能
+ */
+public final class RepositoryMetrics {
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder dbErrorCount = new LongAdder();
+    /**
+     * 数据库查询耗时，包括批量查询
+     */
+    private final LatencyRecorder selectLatency = new LatencyRecorder();
+    /**
+     * 数据库更新耗时，批量更新按一次计算
+     */
+    private final LatencyRecorder updateLatency = new LatencyRecorder();
+
+    private volatile IntSupplier dirtyCount = () -> 0;
+    private volatile IntSupplier evictionQueueSize = () -> 0;
+
+    RepositoryMetrics() {
+    }
+
+    void hit() {
+        hitCount.increment();
+    }
+
+    void miss() {
+        missCount.increment();
+    }
+
+    void hits(int hits, int misses) {
+        hitCount.add(hits);
+        missCount.add(misses);
+    }
+
+    void dbError() {
+        dbErrorCount.increment();
+    }
+
+    LatencyRecorder selectRecorder() {
+        return selectLatency;
+    }
+
+    LatencyRecorder updateRecorder() {
+        return updateLatency;
+    }
+
+    /**
+     * 绑定实时读取的队列长度
+     */
+    void bind(IntSupplier dirtyCount, IntSupplier evictionQueueSize) {
+        this.dirtyCount = dirtyCount;
+        this.evictionQueueSize = evictionQueueSize;
+    }
+
+    /**
+     * 缓存命中次数
+     */
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 缓存未命中次数
+     */
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 数据库操作失败次数
+     */
+    public long dbErrorCount() {
+        return dbErrorCount.sum();
+    }
+
+    public LatencyRecorder selectLatency() {
+        return selectLatency;
+    }
+
+    public LatencyRecorder updateLatency() {
+        return updateLatency;
+    }
+
+    /**
+     * 有未入库修改的数量
+     */
+    public int dirtyCount() {
+        return dirtyCount.getAsInt();
+    }
+
+    /**
+     * 淘汰后等待入库的数量
+     */
+    public int evictionQueueSize() {
+        return evictionQueueSize.getAsInt();
+    }
+}
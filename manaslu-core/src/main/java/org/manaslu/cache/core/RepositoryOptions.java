@@ -0,0 +1,28 @@
+package org.manaslu.cache.core;
+
+import org.manaslu.cache.core.annotations.Entity;
+
+/**
+ * 存储类配置
+ *
+ * @param name                  名称
+ * @param asyncMaxConcurrency   异步操作的最大并发数
+ * @param asyncQueueCapacity    异步操作的等待队列容量
+ * @param mutationQueueCapacity 异步删除队列容量
+ * @param evictionQueueCapacity 淘汰入库队列容量
+ */
+record RepositoryOptions(String name, int asyncMaxConcurrency, int asyncQueueCapacity, int mutationQueueCapacity, int evictionQueueCapacity) {
+
+    static RepositoryOptions of(Class<?> entityType, Entity annotation) {
+        return new RepositoryOptions(entityType.getSimpleName(), annotation.asyncMaxConcurrency(), annotation.asyncQueueCapacity(),
+                annotation.mutationQueueCapacity(),
+                annotation.evictionQueueCapacity());
+    }
+
+    /**
+     * 默认配置
+     */
+    static RepositoryOptions defaults(String name) {
+        return new RepositoryOptions(name, 64, 10000, 10000, 10000);
+    }
+}
@@ -0,0 +1,280 @@
+package org.manaslu.cache.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 入库快照
+ * 入库线程先把更新字段复制到新的原始实体，子实体和集合深复制，序列化和数据库操作只读取快照
+ * 复制不加锁，增强类修改前后更新实体的修改计数，复制期间有修改时重新复制
+ * 不可变类型直接引用，其他未知类型无法复制时仍引用原对象
+ */
+@Slf4j
+final class Snapshots<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> {
+
+    private static final Snapshots<?, ?> DISABLED = new Snapshots<>();
+    /**
+     * 等待修改完成的间隔
+     */
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    @Nullable
+    private final MethodHandle constructor;
+    @Nullable
+    private final ManasluField id;
+    /**
+     * 掩码每一位对应的字段
+     */
+    private final ManasluField[][] fields;
+    /**
+     * 子实体原始类型
+     */
+    private final Map<Class<?>, SubType> subEntities;
+    /**
+     * 复制期间有修改需要重新复制的次数，每次复制最多计一次
+     */
+    private final LongAdder retryCount = new LongAdder();
+
+    private Snapshots() {
+        this.constructor = null;
+        this.id = null;
+        this.fields = new ManasluField[0][];
+        this.subEntities = Map.of();
+    }
+
+    Snapshots(EntityTypeInfo typeInfo) {
+        this.constructor = constructor(typeInfo.rawClass());
+        this.id = typeInfo.id();
+        this.fields = typeInfo.fieldsByBit();
+        var subs = new HashMap<Class<?>, SubType>();
+        typeInfo.subEntities().forEach((type, info) -> subs.put(type, new SubType(constructor(type), info.fields().values())));
+        this.subEntities = Map.copyOf(subs);
+    }
+
+    private static MethodHandle constructor(Class<?> type) {
+        try {
+            return MethodHandles.privateLookupIn(type, EntityTypeManager.LOOKUP).findConstructor(type, MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("入库快照需要无参构造器 " + type.getName(), ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> Snapshots<ID, Entity> disabled() {
+        return (Snapshots<ID, Entity>) DISABLED;
+    }
+
+    boolean enabled() {
+        return constructor != null;
+    }
+
+    long retryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * 复制更新字段，没有修改正在进行且复制前后修改计数不变时返回
+     * 超过等待时间仍有修改时放弃，由调用方保留未入库的修改等待下次
+     *
+     * @return 实体为快照的更新，未开启时返回原对象，超时为null
+     */
+    @Nullable
+    UpdateInfo<ID, Entity> capture(UpdateInfo<ID, Entity> info) {
+        if (constructor == null) {
+            return info;
+        }
+        var entity = info.entity();
+        var mask = info.mask();
+        var deadline = System.nanoTime() + DelayDumpStrategy.MAX_BLOCK_NANOS;
+        var retried = false;
+        while (true) {
+            var stamp = entity.mutationStamp();
+            if ((int) stamp == 0) {
+                Entity copy = null;
+                try {
+                    copy = copy(entity, mask);
+                } catch (RuntimeException ex) {
+                    // 复制集合时被并发修改，重新复制
+                }
+                VarHandle.loadLoadFence();
+                if (copy != null && entity.mutationStamp() == stamp) {
+                    return new UpdateInfo<>(copy, mask);
+                }
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                log.warn("入库快照等待修改超时，留到下次入库 {}", entity.id());
+                return null;
+            }
+            if (!retried) {
+                retried = true;
+                retryCount.increment();
+            }
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    /**
+     * 把掩码中的字段从一个快照引用到另一个快照，合并日志中的修改时使用
+     */
+    void copyFields(Entity source, Entity target, long mask) {
+        if (constructor == null || source == target) {
+            return;
+        }
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                if ((mask & (1L << i)) == 0 || fields[i] == null) {
+                    continue;
+                }
+                for (var field : fields[i]) {
+                    field.set(target, field.get(source));
+                }
+            }
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException("合并入库快照失败 " + source.id(), ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entity copy(Entity entity, long mask) {
+        try {
+            var copy = (Entity) constructor.invoke();
+            id.set(copy, id.get(entity));
+            for (int i = 0; i < fields.length; i++) {
+                if ((mask & (1L << i)) == 0 || fields[i] == null) {
+                    continue;
+                }
+                for (var field : fields[i]) {
+                    copyField(field, entity, copy, 0);
+                }
+            }
+            return copy;
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException("创建入库快照失败 " + entity.id(), ex);
+        }
+    }
+
+    /**
+     * 复制后的集合类型与字段类型不兼容时引用原对象
+     */
+    private void copyField(ManasluField field, Object source, Object target, int depth) throws Throwable {
+        var value = field.get(source);
+        var copy = deepCopy(value, depth);
+        field.set(target, field.getType().isInstance(copy) ? copy : value);
+    }
+
+    @Nullable
+    private Object deepCopy(@Nullable Object value, int depth) throws Throwable {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character
+                || value instanceof Enum<?> || value instanceof TemporalAccessor || value instanceof UUID || value instanceof Record) {
+            return value;
+        }
+        // 引用成环时不再复制
+        if (depth > 16) {
+            return value;
+        }
+        switch (value) {
+            case byte[] bytes -> {
+                return bytes.clone();
+            }
+            case int[] ints -> {
+                return ints.clone();
+            }
+            case long[] longs -> {
+                return longs.clone();
+            }
+            case Object[] objects -> {
+                var copy = objects.clone();
+                for (int i = 0; i < copy.length; i++) {
+                    copy[i] = deepCopy(copy[i], depth + 1);
+                }
+                return copy;
+            }
+            case Date date -> {
+                return date.clone();
+            }
+            case List<?> list -> {
+                var copy = new ArrayList<>(list.size());
+                for (var e : list) {
+                    copy.add(deepCopy(e, depth + 1));
+                }
+                return copy;
+            }
+            case Set<?> set -> {
+                @SuppressWarnings("unchecked")
+                Set<Object> copy = set instanceof SortedSet<?> sorted
+                        ? new TreeSet<>((Comparator<Object>) sorted.comparator()) : new LinkedHashSet<>();
+                for (var e : set) {
+                    copy.add(deepCopy(e, depth + 1));
+                }
+                return copy;
+            }
+            case Map<?, ?> map -> {
+                @SuppressWarnings("unchecked")
+                Map<Object, Object> copy = map instanceof SortedMap<?, ?> sorted
+                        ? new TreeMap<>((Comparator<Object>) sorted.comparator()) : new LinkedHashMap<>();
+                for (var e : map.entrySet()) {
+                    copy.put(deepCopy(e.getKey(), depth + 1), deepCopy(e.getValue(), depth + 1));
+                }
+                return copy;
+            }
+            case Collection<?> collection -> {
+                var copy = new ArrayList<>(collection.size());
+                for (var e : collection) {
+                    copy.add(deepCopy(e, depth + 1));
+                }
+                return copy;
+            }
+            default -> {
+                var type = value.getClass();
+                // 增强后的子实体复制为原始类型
+                if (type.getName().endsWith("$Proxy")) {
+                    type = type.getSuperclass();
+                }
+                var subType = subEntities.get(type);
+                if (subType == null) {
+                    return value;
+                }
+                var copy = subType.constructor().invoke();
+                for (var field : subType.fields()) {
+                    copyField(field, value, copy, depth + 1);
+                }
+                return copy;
+            }
+        }
+    }
+
+    /**
+     * @param constructor 原始类型的无参构造器
+     * @param fields      字段
+     */
+    private record SubType(MethodHandle constructor, Collection<ManasluField> fields) {
+    }
+}
@@ -1,25 +1,140 @@
 package org.manaslu.cache.core;
 
 import javax.annotation.Nonnull;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
 
 /**
  * 更新信息
- *
- * @param entity           数据
- * @param updateProperties 更新字段
+ * 更新字段用FieldMask的位掩码记录，实体已有未入库的更新时直接合并掩码，不创建新对象
  */
-public record UpdateInfo<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>>(Entity entity,
-                                                                                       @Nonnull Set<String> updateProperties) {
+public final class UpdateInfo<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> {
 
+    /**
+     * 已被入库线程取走，之后的更新不再合并到这里
+     */
+    private static final long CLAIMED = Long.MIN_VALUE;
+    private static final VarHandle MASK;
+    private static final VarHandle JOURNALED;
+
+    static {
+        try {
+            MASK = MethodHandles.lookup().findVarHandle(UpdateInfo.class, "mask", long.class);
+            JOURNALED = MethodHandles.lookup().findVarHandle(UpdateInfo.class, "journaled", boolean.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final Entity entity;
+    private volatile long mask;
+    /**
+     * 已在预写日志队列中等待写入
+     */
+    private volatile boolean journaled;
+
+    /**
+     * @param entity 数据
+     * @param mask   更新字段的掩码
+     */
+    public UpdateInfo(Entity entity, long mask) {
+        this.entity = entity;
+        this.mask = mask & FieldMask.ALL;
+    }
+
+    /**
+     * @param entity           数据
+     * @param updateProperties 更新字段
+     */
+    public UpdateInfo(Entity entity, @Nonnull Collection<String> updateProperties) {
+        this(entity, FieldMask.of(entity.getClass(), updateProperties));
+    }
+
+    public Entity entity() {
+        return entity;
+    }
+
+    /**
+     * 更新字段的掩码
+     */
+    public long mask() {
+        return mask & FieldMask.ALL;
+    }
+
+    /**
+     * @param bit FieldMask.bit返回的字段位
+     */
+    public boolean isUpdated(long bit) {
+        return (mask & bit) != 0;
+    }
+
+    /**
+     * 更新字段，每次调用创建新集合，热路径使用isUpdated
+     */
+    @Nonnull
+    public Set<String> updateProperties() {
+        return Collections.unmodifiableSet(FieldMask.names(entity.getClass(), mask()));
+    }
+
+    /**
+     * 合并更新字段
+     *
+     * @return 已被取走时返回false
+     */
+    boolean or(long bits) {
+        while (true) {
+            var current = mask;
+            if ((current & CLAIMED) != 0) {
+                return false;
+            }
+            // 字段已记录时不写，避免多线程修改同一实体时的缓存行竞争
+            if ((current & bits) == bits || MASK.compareAndSet(this, current, current | bits)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 标记放入预写日志队列
+     *
+     * @return 已在队列中时返回false
+     */
+    boolean markJournaled() {
+        return !journaled && JOURNALED.compareAndSet(this, false, true);
+    }
+
+    /**
+     * 预写日志写入前取消标记，之后合并的掩码重新放入队列
+     */
+    void unmarkJournaled() {
+        journaled = false;
+    }
+
+    /**
+     * 入库线程从待入库表移除后调用，之后掩码不再变化
+     */
+    void claim() {
+        MASK.getAndBitwiseOr(this, CLAIMED);
+    }
+
+    /**
+     * 在待入库表中合并，未取走时合并到当前对象
+     */
     UpdateInfo<ID, Entity> merge(UpdateInfo<ID, Entity> other) {
         if (entity != other.entity()) {
             throw new IllegalStateException("不同值不能合并");
         }
-        var hashSet = new HashSet<>(updateProperties);
-        hashSet.addAll(other.updateProperties);
-        return new UpdateInfo<>(entity, Collections.unmodifiableSet(hashSet));
+        if (or(other.mask())) {
+            return this;
+        }
+        return new UpdateInfo<>(entity, mask() | other.mask());
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateInfo[entity=" + entity + ", updateProperties=" + updateProperties() + "]";
     }
 }
@@ -0,0 +1,94 @@
+package org.manaslu.cache.core;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 有并发上限的虚拟线程执行器
+ * 同时最多maxConcurrency个虚拟线程，超过上限的任务在有界队列中等待，由执行完的线程继续执行
+ * 队列满时拒绝，数据库变慢时积压的任务和线程数量都有上限
+ */
+final class VirtualThreadExecutor implements Executor {
+
+    private final String name;
+    private final ThreadFactory threadFactory;
+    /**
+     * 正在运行的线程数量许可
+     */
+    private final Semaphore semaphore;
+    private final BlockingQueue<Runnable> queue;
+
+    /**
+     * @param name           线程名前缀
+     * @param maxConcurrency 最大并发数
+     * @param queueCapacity  等待队列容量
+     */
+    VirtualThreadExecutor(String name, int maxConcurrency, int queueCapacity) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("最大并发数必须大于0: " + maxConcurrency);
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("等待队列容量必须大于0: " + queueCapacity);
+        }
+        this.name = name;
+        this.threadFactory = Thread.ofVirtual().name(name + "-", 0).factory();
+        this.semaphore = new Semaphore(maxConcurrency);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * @throws RejectedExecutionException 并发数和等待队列都已满
+     */
+    @Override
+    public void execute(@Nonnull Runnable command) {
+        if (semaphore.tryAcquire()) {
+            start(command);
+            return;
+        }
+        if (!queue.offer(command)) {
+            throw new RejectedExecutionException("异步任务队列已满 " + name);
+        }
+        // 放入队列期间所有线程可能已经结束
+        if (semaphore.tryAcquire()) {
+            var task = queue.poll();
+            if (task != null) {
+                start(task);
+            } else {
+                semaphore.release();
+            }
+        }
+    }
+
+    private void start(Runnable first) {
+        threadFactory.newThread(() -> run(first)).start();
+    }
+
+    /**
+     * 执行完后继续执行队列中的任务，队列为空时释放许可
+     */
+    private void run(Runnable first) {
+        var task = first;
+        while (true) {
+            while (task != null) {
+                try {
+                    task.run();
+                } catch (Throwable ex) {
+                    var thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+                }
+                task = queue.poll();
+            }
+            semaphore.release();
+            // 释放许可后放入的任务可能没有线程执行
+            if (queue.isEmpty() || !semaphore.tryAcquire()) {
+                return;
+            }
+            task = queue.poll();
+        }
+    }
+}
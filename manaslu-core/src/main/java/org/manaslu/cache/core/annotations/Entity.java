@@ -33,15 +33,38 @@ public @interface Entity {
     CacheStrategy cacheStrategy() default CacheStrategy.NO;
 
     /**
-     * 选择LRU配置时，最大数量
+     * 选择LRU或TINY_LFU配置时，最大数量
      */
     int lruMaxSize() default Integer.MAX_VALUE;
 
     /**
-     * 选择LRU配置时，超时时间
+     * 选择LRU或TINY_LFU配置时，超时时间
      */
     long lruMaxExpireTime() default -1;
 
+    /**
+     * 选择LRU或TINY_LFU配置时，按估算的内存大小淘汰的最大字节数，-1 代表按lruMaxSize淘汰
+     * 首次放入缓存时估算，之后在延迟入库成功和后台刷新后重新估算；立即入库和不入库时修改不会改变估算值
+     */
+    long lruMaxWeightBytes() default -1;
+
+    /**
+     * 选择LRU配置时，加载超过lruMaxExpireTime - lruRefreshAheadTime后被访问会触发后台刷新(ms), -1 代表不刷新
+     * 刷新直接修改缓存中的对象，有未入库修改的数据跳过；需要同时配置lruMaxExpireTime
+     */
+    long lruRefreshAheadTime() default -1;
+
+    /**
+     * 选择LRU或TINY_LFU配置时，淘汰的数据存入冷数据层的最大字节数，-1 代表不启用
+     * 冷数据序列化后存入堆外内存，未命中缓存时先从冷数据层恢复，再查询数据库
+     */
+    long coldTierMaxBytes() default -1;
+
+    /**
+     * 冷数据层使用的内存映射文件，为空时使用堆外内存
+     */
+    String coldTierFile() default "";
+
     /**
      * 更新策略
      */
@@ -53,10 +76,94 @@ public @interface Entity {
     long intervalScheduleTime() default 60000L;
 
     /**
-     * 多少数量触发入库
+     * 未入库实体达到多少数量时后台触发入库
      */
     int maxCountTriggerDump() default Integer.MAX_VALUE;
 
+    /**
+     * 延迟入库时未入库实体的硬上限，超过时修改线程等待入库
+     */
+    int maxDirtyCount() default Integer.MAX_VALUE;
+
+    /**
+     * 延迟入库时，每批批量更新的数量
+     */
+    int dumpBatchSize() default 500;
+
+    /**
+     * 延迟入库时预写日志的目录，为空时不启用
+     * 修改先写入本地日志，进程崩溃后启动时回放未入库的修改
+     */
+    String journalDir() default "";
+
+    /**
+     * 预写日志刷盘的间隔(ms)，崩溃时最多丢失这段时间内的修改
+     */
+    long journalSyncTime() default 100L;
+
+    /**
+     * 延迟入库时是否检测值的变化，值与上次入库相同的字段不再写入数据库
+     * 每个实体额外记录每个字段的指纹
+     */
+    boolean changeDetection() default false;
+
+    /**
+     * 延迟入库时是否先复制更新字段再序列化，入库线程不直接读取正在被修改的实体
+     * 实体和子实体需要无参构造器
+     */
+    boolean flushSnapshot() default false;
+
+    /**
+     * 异步操作的最大并发数
+     */
+    int asyncMaxConcurrency() default 64;
+
+    /**
+     * 异步操作超过最大并发数时的等待队列容量，队列满时异步操作返回RejectedExecutionException失败的结果
+     */
+    int asyncQueueCapacity() default 10000;
+
+    /**
+     * 异步删除队列容量，队列满时删除操作阻塞
+     */
+    int mutationQueueCapacity() default 10000;
+
+    /**
+     * 淘汰入库队列容量，缓存淘汰的数据由单独的线程入库，队列满时按主键合并后仍由入库线程处理
+     */
+    int evictionQueueCapacity() default 10000;
+
+    /**
+     * 不存在数据的缓存时间(ms), -1 代表不缓存
+     */
+    long negativeCacheExpireTime() default -1;
+
+    /**
+     * 不存在数据的最大缓存数量
+     */
+    int negativeCacheMaxSize() default 100000;
+
+    /**
+     * 是否使用布隆过滤器过滤不存在的主键
+     * 启动时加载所有主键，只适用于数据只由本进程新增的情况
+     */
+    boolean bloomFilter() default false;
+
+    /**
+     * 布隆过滤器预计数量
+     */
+    int bloomFilterExpectedSize() default 1000000;
+
+    /**
+     * 布隆过滤器误判率
+     */
+    double bloomFilterFpp() default 0.01;
+
+    /**
+     * 启动时是否预热，将所有数据加载到缓存，只对PERSIST缓存策略生效
+     */
+    boolean warmUp() default false;
+
     enum UpdateType {
         /**
          * 全量更新
@@ -73,6 +180,10 @@ public @interface Entity {
          * lru淘汰策略
          */
         LRU,
+        /**
+         * W-TinyLFU淘汰策略，按访问频率决定是否放入缓存，适合热点数据和批量扫描混合的场景
+         */
+        TINY_LFU,
         /**
          * 持久化淘汰策略
          */
@@ -0,0 +1,25 @@
+package org.manaslu.cache.core.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 缓存二级索引，只索引缓存中的数据
+ * 字段只能在@Enhance方法中修改，否则索引不会更新
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Index {
+
+    /**
+     * 索引名，默认字段名
+     */
+    String value() default "";
+
+    /**
+     * 是否唯一
+     */
+    boolean unique() default false;
+}
@@ -2,8 +2,14 @@ package org.manaslu.cache.mongo;
 
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
 import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
 import org.bson.types.ObjectId;
 import org.manaslu.cache.core.AbstractEntity;
 import org.manaslu.cache.core.DbOperator;
@@ -12,7 +18,9 @@ import org.manaslu.cache.core.UpdateInfo;
 import org.manaslu.cache.core.exception.ManasluException;
 
 import javax.annotation.Nonnull;
-import java.util.Optional;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.StreamSupport;
 
 /**
@@ -20,6 +28,13 @@ import java.util.stream.StreamSupport;
  */
 public final class MongoDbOperator<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> implements DbOperator<ID, Entity> {
 
+    /**
+     * 遍历时每批读取的数量
+     */
+    static final int SCAN_BATCH_SIZE = 1000;
+
+    static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
     private final MongoCollection<Document> collection;
 
     private final MongoEntityInfo entityTypeInfo;
@@ -37,32 +52,115 @@ public final class MongoDbOperator<ID extends Comparable<ID>, Entity extends Abs
                 .findFirst();
     }
 
+    @Override
+    public Map<ID, Entity> selectAll(@Nonnull Collection<ID> ids) {
+        var result = new HashMap<ID, Entity>(ids.size());
+        for (Document document : collection.find(Filters.in("_id", ids))) {
+            var entity = toEntity(document);
+            result.put(entity.id(), entity);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supportsScan() {
+        return true;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
-    public Optional<ID> insert(@Nonnull Entity entity) {
-        ID id;
-        // 只支持ObjectId
-        if (entity.id() == null && entityTypeInfo.entityTypeInfo.id().getType().equals(ObjectId.class)) {
-            id = (ID) new ObjectId();
-        } else {
-            id = entity.id();
+    public void forEachId(@Nonnull Consumer<ID> consumer) {
+        for (Document document : collection.find().projection(Projections.include("_id")).batchSize(SCAN_BATCH_SIZE)) {
+            consumer.accept((ID) document.get("_id"));
         }
+    }
+
+    @Override
+    public void scan(@Nonnull Consumer<Entity> consumer) {
+        for (Document document : collection.find().batchSize(SCAN_BATCH_SIZE)) {
+            consumer.accept(toEntity(document));
+        }
+    }
+
+    @Override
+    public Optional<ID> insert(@Nonnull Entity entity) {
+        var id = generateId(entity);
         var document = toDocument(id, entity);
         collection.insertOne(document);
         return Optional.ofNullable(id);
     }
 
+    @Override
+    public List<Optional<ID>> insertAll(@Nonnull List<Entity> entities) {
+        var ids = new ArrayList<Optional<ID>>(entities.size());
+        var documents = new ArrayList<Document>(entities.size());
+        for (var entity : entities) {
+            var id = generateId(entity);
+            ids.add(Optional.ofNullable(id));
+            documents.add(toDocument(id, entity));
+        }
+        collection.insertMany(documents);
+        return ids;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ID generateId(Entity entity) {
+        // 只支持ObjectId
+        if (entity.id() == null && entityTypeInfo.entityTypeInfo.id().getType().equals(ObjectId.class)) {
+            return (ID) new ObjectId();
+        }
+        return entity.id();
+    }
+
     @Override
     public void update(@Nonnull UpdateInfo<ID, Entity> entity) {
         collection.updateOne(Filters.eq("_id", entity.entity().id()),
                 toUpdateDocument(entity));
     }
 
+    /**
+     * 无序批量写入，单条失败不影响其他更新
+     */
+    @Override
+    public void updateAll(@Nonnull List<UpdateInfo<ID, Entity>> infos) {
+        if (infos.isEmpty()) {
+            return;
+        }
+        var models = new ArrayList<WriteModel<Document>>(infos.size());
+        for (var info : infos) {
+            models.add(new UpdateOneModel<>(Filters.eq("_id", info.entity().id()), toUpdateDocument(info)));
+        }
+        collection.bulkWrite(models, new BulkWriteOptions().ordered(false));
+    }
+
     @Override
     public void delete(ID id) {
         collection.deleteOne(Filters.eq("_id", id));
     }
 
+    @Override
+    public void deleteAll(@Nonnull Collection<ID> ids) {
+        collection.deleteMany(Filters.in("_id", ids));
+    }
+
+    @Override
+    public boolean supportsEncode() {
+        return true;
+    }
+
+    /**
+     * 使用扩展JSON格式，保留int64、ObjectId等类型
+     */
+    @Override
+    public byte[] encode(@Nonnull Entity entity) {
+        return toDocument(entity.id(), entity).toJson(JSON_SETTINGS).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Entity decode(@Nonnull byte[] bytes) {
+        return toEntity(Document.parse(new String(bytes, StandardCharsets.UTF_8)));
+    }
+
     @SuppressWarnings("unchecked")
     Entity toEntity(Document document) {
         var entity = (Entity) entityTypeInfo.createInstance();
@@ -148,7 +246,7 @@ public final class MongoDbOperator<ID extends Comparable<ID>, Entity extends Abs
     Document toUpdateDocument(UpdateInfo<ID, Entity> info) {
         var document = new Document();
         entityTypeInfo.entityTypeInfo.normalFields().forEach((k, v) -> {
-            if (info.updateProperties().contains(k)) {
+            if (info.isUpdated(entityTypeInfo.entityTypeInfo.fieldBit(k))) {
                 try {
                     if (entityTypeInfo.entityTypeInfo().subEntities().containsKey(v.getType())) {
                         document.put(k, toDocument(v.get(info.entity()), v.getType()));
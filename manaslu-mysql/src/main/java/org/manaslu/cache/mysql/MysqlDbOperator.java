@@ -10,21 +10,26 @@ import org.manaslu.cache.core.UpdateInfo;
 import org.manaslu.cache.core.exception.ManasluException;
 
 import javax.annotation.Nonnull;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Consumer;
 
 @Slf4j
 public class MysqlDbOperator<ID extends Comparable<ID>, Entity extends AbstractEntity<ID>> implements DbOperator<ID, Entity> {
     static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * 批量操作时，每条SQL最多的主键数量
+     */
+    static final int CHUNK_SIZE = 500;
     private final MysqlConnections connections;
     private final MysqlEntityInfo entityInfo;
     private final String tableName;
     private final String selectSql;
+    private final String selectIdSql;
+    private final String scanSql;
     private final String insertSql;
 
     private final String deleteSql;
@@ -34,6 +39,8 @@ public class MysqlDbOperator<ID extends Comparable<ID>, Entity extends AbstractE
         this.entityInfo = new MysqlEntityInfo(entityTypeInfo);
         this.tableName = entityTypeInfo.database() == null ? entityTypeInfo.table() : entityTypeInfo.database() + "." + entityTypeInfo.table();
         this.selectSql = String.format("select * from `%s` where `id` = ?;", tableName);
+        this.selectIdSql = String.format("select `id` from `%s`;", tableName);
+        this.scanSql = String.format("select * from `%s`;", tableName);
         this.deleteSql = String.format("delete from `%s` where `id` = ?;", tableName);
         this.insertSql = buildInsert();
     }
@@ -62,8 +69,8 @@ public class MysqlDbOperator<ID extends Comparable<ID>, Entity extends AbstractE
 
     @Override
     public Optional<Entity> select(ID id) {
-        try (var connection = connections.getConnection()) {
-            var preparedStatement = connection.prepareStatement(selectSql);
+        try (var connection = connections.getConnection();
+             var preparedStatement = connection.prepareStatement(selectSql)) {
             preparedStatement.setObject(1, id);
             var resultSet = preparedStatement.executeQuery();
             if (resultSet.next()) {
@@ -78,23 +85,95 @@ public class MysqlDbOperator<ID extends Comparable<ID>, Entity extends AbstractE
     }
 
     @Override
-    public Optional<ID> insert(@Nonnull Entity entity) {
+    public Map<ID, Entity> selectAll(@Nonnull Collection<ID> ids) {
+        var result = new HashMap<ID, Entity>(ids.size());
+        var list = List.copyOf(ids);
         try (var connection = connections.getConnection()) {
-            var preparedStatement = connection.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS);
-            for (int i = 0; i < entityInfo.propertyTypes.size(); i++) {
-                var key = entityInfo.propertyTypes.get(i).name;
-                if (entityInfo.entityTypeInfo.normalFields().containsKey(key)) {
-                    var field = entityInfo.entityTypeInfo.normalFields().get(key);
-                    var object = field.get(entity);
-                    if (entityInfo.entityTypeInfo.subEntities().containsKey(field.getType())) {
-                        preparedStatement.setObject(i + 1, object == null ? "" : MAPPER.writeValueAsString(object));
-                    } else {
-                        preparedStatement.setObject(i + 1, object);
+            for (int from = 0; from < list.size(); from += CHUNK_SIZE) {
+                var chunk = list.subList(from, Math.min(from + CHUNK_SIZE, list.size()));
+                var sql = buildIn("select * from `", chunk.size());
+                try (var preparedStatement = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        preparedStatement.setObject(i + 1, chunk.get(i));
+                    }
+                    var resultSet = preparedStatement.executeQuery();
+                    while (resultSet.next()) {
+                        var entity = toEntity(resultSet);
+                        result.put(entity.id(), entity);
                     }
-                } else if ("id".equals(key)) {
-                    preparedStatement.setObject(i + 1, entity.id());
                 }
+                log.debug("select SQL = {}, ids = {}", sql, chunk);
+            }
+        } catch (SQLException e) {
+            throw new ManasluException("执行SQL失败", e);
+        }
+        return result;
+    }
+
+    /**
+     * 构建按主键批量操作的SQL
+     *
+     * @param prefix 表名之前的语句
+     * @param size   主键数量
+     */
+    String buildIn(String prefix, int size) {
+        StringBuilder sb = new StringBuilder(prefix).append(tableName).append("` where `id` in (");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("?");
+        }
+        sb.append(");");
+        return sb.toString();
+    }
+
+    @Override
+    public boolean supportsScan() {
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void forEachId(@Nonnull Consumer<ID> consumer) {
+        try (var connection = connections.getConnection();
+             var preparedStatement = connection.prepareStatement(selectIdSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // 流式读取，不一次性加载到内存
+            preparedStatement.setFetchSize(Integer.MIN_VALUE);
+            var resultSet = preparedStatement.executeQuery();
+            var idType = entityInfo.entityTypeInfo.id().getType();
+            while (resultSet.next()) {
+                consumer.accept((ID) resultSet.getObject("id", idType));
+            }
+        } catch (SQLException e) {
+            throw new ManasluException("执行SQL失败", e);
+        } finally {
+            log.debug("select SQL = {}", selectIdSql);
+        }
+    }
+
+    @Override
+    public void scan(@Nonnull Consumer<Entity> consumer) {
+        try (var connection = connections.getConnection();
+             var preparedStatement = connection.prepareStatement(scanSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // 流式读取，不一次性加载到内存
+            preparedStatement.setFetchSize(Integer.MIN_VALUE);
+            var resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                consumer.accept(toEntity(resultSet));
             }
+        } catch (SQLException e) {
+            throw new ManasluException("执行SQL失败", e);
+        } finally {
+            log.debug("scan SQL = {}", scanSql);
+        }
+    }
+
+    @Override
+    public Optional<ID> insert(@Nonnull Entity entity) {
+        try (var connection = connections.getConnection();
+             var preparedStatement = connection.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+            bindInsert(preparedStatement, entity);
             preparedStatement.executeUpdate();
             var resultSet = preparedStatement.getGeneratedKeys();
             if (resultSet.next()) {
@@ -112,6 +191,68 @@ public class MysqlDbOperator<ID extends Comparable<ID>, Entity extends AbstractE
         }
     }
 
+    @Override
+    public List<Optional<ID>> insertAll(@Nonnull List<Entity> entities) {
+        var result = new ArrayList<Optional<ID>>(entities.size());
+        try (var connection = connections.getConnection()) {
+            var autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                for (int from = 0; from < entities.size(); from += CHUNK_SIZE) {
+                    var chunk = entities.subList(from, Math.min(from + CHUNK_SIZE, entities.size()));
+                    try (var preparedStatement = connection.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+                        for (var entity : chunk) {
+                            bindInsert(preparedStatement, entity);
+                            preparedStatement.addBatch();
+                        }
+                        preparedStatement.executeBatch();
+                        // 只有没有主键的数据会生成主键，按顺序对应
+                        var resultSet = preparedStatement.getGeneratedKeys();
+                        for (var entity : chunk) {
+                            if (entity.id() == null && resultSet.next()) {
+                                result.add(toID(entityInfo.entityTypeInfo.id().getType(), resultSet));
+                            } else {
+                                result.add(Optional.empty());
+                            }
+                        }
+                    }
+                }
+                connection.commit();
+            } catch (Exception e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new ManasluException("执行SQL失败", e);
+        } catch (IllegalAccessException e) {
+            throw new ManasluException("获取属性失败", e);
+        } catch (Exception e) {
+            throw new ManasluException("出现异常", e);
+        } finally {
+            log.debug("insert SQL = {}, size = {}", insertSql, entities.size());
+        }
+    }
+
+    void bindInsert(PreparedStatement preparedStatement, Entity entity) throws Exception {
+        for (int i = 0; i < entityInfo.propertyTypes.size(); i++) {
+            var key = entityInfo.propertyTypes.get(i).name;
+            if (entityInfo.entityTypeInfo.normalFields().containsKey(key)) {
+                var field = entityInfo.entityTypeInfo.normalFields().get(key);
+                var object = field.get(entity);
+                if (entityInfo.entityTypeInfo.subEntities().containsKey(field.getType())) {
+                    preparedStatement.setObject(i + 1, object == null ? "" : MAPPER.writeValueAsString(object));
+                } else {
+                    preparedStatement.setObject(i + 1, object);
+                }
+            } else if ("id".equals(key)) {
+                preparedStatement.setObject(i + 1, entity.id());
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private Optional<ID> toID(Class<?> clazz, ResultSet resultSet) {
         try {
@@ -131,45 +272,118 @@ public class MysqlDbOperator<ID extends Comparable<ID>, Entity extends AbstractE
 
     @Override
     public void update(@Nonnull UpdateInfo<ID, Entity> entity) {
+        if (!updatesColumn(entity)) {
+            return;
+        }
         final var sql = buildUpdate(entity);
+        try (var connection = connections.getConnection();
+             var preparedStatement = connection.prepareStatement(sql)) {
+            bindUpdate(preparedStatement, entity);
+            preparedStatement.executeUpdate();
+        } catch (SQLException e) {
+            throw new ManasluException("执行SQL失败", e);
+        } catch (IllegalAccessException e) {
+            throw new ManasluException("获取属性失败", e);
+        } catch (Exception e) {
+            throw new ManasluException("出现异常", e);
+        } finally {
+            log.debug("update SQL = {}, entity = {}", sql, entity.entity());
+        }
+    }
+
+    /**
+     * 按更新字段相同的SQL分组，每组一个批量语句，在同一个事务中执行
+     */
+    @Override
+    public void updateAll(@Nonnull List<UpdateInfo<ID, Entity>> infos) {
+        if (infos.isEmpty()) {
+            return;
+        }
+        var groups = new LinkedHashMap<String, List<UpdateInfo<ID, Entity>>>();
+        for (var info : infos) {
+            if (!updatesColumn(info)) {
+                continue;
+            }
+            groups.computeIfAbsent(buildUpdate(info), k -> new ArrayList<>()).add(info);
+        }
+        if (groups.isEmpty()) {
+            return;
+        }
         try (var connection = connections.getConnection()) {
-            var preparedStatement = connection.prepareStatement(sql);
-            int i = 1;
-            for (var propertyType : entityInfo.propertyTypes) {
-                var key = propertyType.name;
-                if (!entity.updateProperties().contains(key)) {
-                    continue;
-                }
-                if (entityInfo.entityTypeInfo.normalFields().containsKey(key)) {
-                    var field = entityInfo.entityTypeInfo.normalFields().get(key);
-                    var object = field.get(entity.entity());
-                    if (entityInfo.entityTypeInfo.subEntities().containsKey(field.getType())) {
-                        preparedStatement.setObject(i, object == null ? "" : MAPPER.writeValueAsString(object));
-                    } else {
-                        preparedStatement.setObject(i, object);
+            var autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                for (var group : groups.entrySet()) {
+                    var list = group.getValue();
+                    try (var preparedStatement = connection.prepareStatement(group.getKey())) {
+                        for (int i = 0; i < list.size(); i++) {
+                            bindUpdate(preparedStatement, list.get(i));
+                            preparedStatement.addBatch();
+                            if ((i + 1) % CHUNK_SIZE == 0 || i == list.size() - 1) {
+                                preparedStatement.executeBatch();
+                            }
+                        }
                     }
-                    i++;
+                    log.debug("update SQL = {}, size = {}", group.getKey(), list.size());
                 }
+                connection.commit();
+            } catch (Exception e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
             }
-            preparedStatement.setObject(i, entity.entity().id());
-            preparedStatement.executeUpdate();
         } catch (SQLException e) {
             throw new ManasluException("执行SQL失败", e);
         } catch (IllegalAccessException e) {
             throw new ManasluException("获取属性失败", e);
         } catch (Exception e) {
             throw new ManasluException("出现异常", e);
-        } finally {
-            log.debug("update SQL = {}, entity = {}", sql, entity.entity());
         }
     }
 
+    /**
+     * 按buildUpdate的字段顺序设置参数，最后是主键
+     */
+    void bindUpdate(PreparedStatement preparedStatement, UpdateInfo<ID, Entity> entity) throws Exception {
+        int i = 1;
+        for (var propertyType : entityInfo.propertyTypes) {
+            var key = propertyType.name;
+            if (!entity.isUpdated(propertyType.bit)) {
+                continue;
+            }
+            if (entityInfo.entityTypeInfo.normalFields().containsKey(key)) {
+                var field = entityInfo.entityTypeInfo.normalFields().get(key);
+                var object = field.get(entity.entity());
+                if (entityInfo.entityTypeInfo.subEntities().containsKey(field.getType())) {
+                    preparedStatement.setObject(i, object == null ? "" : MAPPER.writeValueAsString(object));
+                } else {
+                    preparedStatement.setObject(i, object);
+                }
+                i++;
+            }
+        }
+        preparedStatement.setObject(i, entity.entity().id());
+    }
+
+    /**
+     * 是否更新了数据库字段，没有时不能生成update语句
+     */
+    private boolean updatesColumn(UpdateInfo<ID, Entity> entity) {
+        for (var property : entityInfo.propertyTypes) {
+            if (entity.isUpdated(property.bit())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     String buildUpdate(UpdateInfo<ID, Entity> entity) {
         StringBuilder sb = new StringBuilder("update `").append(tableName).append("` set ");
         var properties = entityInfo.propertyTypes;
         boolean first = true;
         for (var property : properties) {
-            if (!entity.updateProperties().contains(property.name())) {
+            if (!entity.isUpdated(property.bit())) {
                 continue;
             }
             if (!first) {
@@ -185,8 +399,8 @@ public class MysqlDbOperator<ID extends Comparable<ID>, Entity extends AbstractE
 
     @Override
     public void delete(ID id) {
-        try (var connection = connections.getConnection()) {
-            var preparedStatement = connection.prepareStatement(deleteSql);
+        try (var connection = connections.getConnection();
+             var preparedStatement = connection.prepareStatement(deleteSql)) {
             preparedStatement.setObject(1, id);
             preparedStatement.execute();
         } catch (SQLException e) {
@@ -196,6 +410,70 @@ public class MysqlDbOperator<ID extends Comparable<ID>, Entity extends AbstractE
         }
     }
 
+    @Override
+    public void deleteAll(@Nonnull Collection<ID> ids) {
+        var list = List.copyOf(ids);
+        try (var connection = connections.getConnection()) {
+            for (int from = 0; from < list.size(); from += CHUNK_SIZE) {
+                var chunk = list.subList(from, Math.min(from + CHUNK_SIZE, list.size()));
+                var sql = buildIn("delete from `", chunk.size());
+                try (var preparedStatement = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        preparedStatement.setObject(i + 1, chunk.get(i));
+                    }
+                    preparedStatement.execute();
+                }
+                log.debug("delete SQL = {}, ids = {}", sql, chunk);
+            }
+        } catch (SQLException e) {
+            throw new ManasluException("执行SQL失败", e);
+        }
+    }
+
+    @Override
+    public boolean supportsEncode() {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(@Nonnull Entity entity) {
+        try {
+            var node = MAPPER.createObjectNode();
+            node.set("id", MAPPER.valueToTree(entity.id()));
+            for (var entry : entityInfo.entityTypeInfo.normalFields().entrySet()) {
+                node.set(entry.getKey(), MAPPER.valueToTree(entry.getValue().get(entity)));
+            }
+            return MAPPER.writeValueAsBytes(node);
+        } catch (Exception ex) {
+            throw new ManasluException("序列化失败", ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Entity decode(@Nonnull byte[] bytes) {
+        var entity = (Entity) entityInfo.createInstance();
+        try {
+            var node = MAPPER.readTree(bytes);
+            var idField = entityInfo.entityTypeInfo.id();
+            idField.set(entity, MAPPER.treeToValue(node.get("id"), idField.getType()));
+            for (var entry : entityInfo.entityTypeInfo.normalFields().entrySet()) {
+                var field = entry.getValue();
+                var value = node.get(entry.getKey());
+                if (value == null || value.isNull()) {
+                    field.set(entity, null);
+                } else if (entityInfo.entityTypeInfo.subEntities().containsKey(field.getType())) {
+                    field.set(entity, toObject(value, field.getType()));
+                } else {
+                    field.set(entity, MAPPER.treeToValue(value, field.getType()));
+                }
+            }
+        } catch (Exception ex) {
+            throw new ManasluException("反序列化失败", ex);
+        }
+        return entity;
+    }
+
     @SuppressWarnings("unchecked")
     Entity toEntity(ResultSet resultSet) {
         var entity = (Entity) entityInfo.createInstance();
@@ -264,12 +542,16 @@ public class MysqlDbOperator<ID extends Comparable<ID>, Entity extends AbstractE
 
         List<Wrapper> buildType() {
             var wrappers = new ArrayList<Wrapper>();
-            wrappers.add(new Wrapper(entityTypeInfo.id().getName()));
-            entityTypeInfo.normalFields().keySet().forEach(n -> wrappers.add(new Wrapper(n)));
+            // 主键不会更新
+            wrappers.add(new Wrapper(entityTypeInfo.id().getName(), 0));
+            entityTypeInfo.normalFields().keySet().forEach(n -> wrappers.add(new Wrapper(n, entityTypeInfo.fieldBit(n))));
             return Collections.unmodifiableList(wrappers);
         }
 
-        record Wrapper(String name) {
+        /**
+         * @param bit 更新掩码中对应的位
+         */
+        record Wrapper(String name, long bit) {
 
         }
     }
@@ -7,6 +7,7 @@ import java.lang.annotation.*;
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
 @Inherited
-@Import({MongoManasluConfiguration.class, ManasluConfiguration.class, MysqlManasluConfiguration.class})
+@Import({MongoManasluConfiguration.class, ManasluConfiguration.class, MysqlManasluConfiguration.class,
+        ManasluMetricsConfiguration.class, ManasluEndpointConfiguration.class})
 public @interface EnableManaslu {
 }
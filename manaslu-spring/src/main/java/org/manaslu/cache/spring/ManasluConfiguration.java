@@ -3,6 +3,7 @@ package org.manaslu.cache.spring;
 import org.manaslu.cache.core.DbOperatorFactory;
 import org.manaslu.cache.core.EntityTypeManager;
 import org.manaslu.cache.core.RepositoryFactory;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
@@ -30,6 +31,24 @@ public class ManasluConfiguration {
         return new RepositoryFactory(entityTypeManager, dbOperatorFactory, scheduledExecutorService);
     }
 
+    /**
+     * 预热在ApplicationRunner中执行，阻塞时应用在预热完成后才进入就绪状态
+     */
+    @Bean
+    ApplicationRunner manasluWarmUpRunner(RepositoryFactory repositoryFactory, ManasluProperties properties) {
+        return args -> {
+            var warmUp = properties.getWarmUp();
+            if (!warmUp.isEnabled()) {
+                return;
+            }
+            if (warmUp.isBlockReadiness()) {
+                repositoryFactory.warmUp(warmUp.getParallelism());
+            } else {
+                Thread.ofPlatform().name("manaslu-warmup").start(() -> repositoryFactory.warmUp(warmUp.getParallelism()));
+            }
+        };
+    }
+
     @Bean("manasluScheduler")
     ScheduledExecutorService scheduledThreadPoolExecutor(ManasluProperties properties) {
         return Executors.newScheduledThreadPool(properties.getScheduleNum());
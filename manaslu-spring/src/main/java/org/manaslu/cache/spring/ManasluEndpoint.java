@@ -0,0 +1,75 @@
+package org.manaslu.cache.spring;
+
+import org.manaslu.cache.core.CacheStats;
+import org.manaslu.cache.core.ColdTierStats;
+import org.manaslu.cache.core.DumpStats;
+import org.manaslu.cache.core.LatencyRecorder;
+import org.manaslu.cache.core.MissingIdStats;
+import org.manaslu.cache.core.Repository;
+import org.manaslu.cache.core.RepositoryFactory;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按实体类型查看缓存和入库指标
+ */
+@Endpoint(id = "manaslu")
+public class ManasluEndpoint {
+
+    private final Map<String, Repository<?, ?>> repositories = new ConcurrentHashMap<>();
+
+    public ManasluEndpoint(RepositoryFactory repositoryFactory) {
+        repositoryFactory.addMetricsListener((entityType, repository) -> repositories.put(entityType.getSimpleName(), repository));
+    }
+
+    @ReadOperation
+    public Map<String, RepositoryDescriptor> repositories() {
+        var result = new TreeMap<String, RepositoryDescriptor>();
+        repositories.forEach((name, repository) -> result.put(name, RepositoryDescriptor.of(repository)));
+        return result;
+    }
+
+    @ReadOperation
+    public RepositoryDescriptor repository(@Selector String entity) {
+        var repository = repositories.get(entity);
+        return repository == null ? null : RepositoryDescriptor.of(repository);
+    }
+
+    /**
+     * @param hitCount          缓存命中次数
+     * @param missCount         缓存未命中次数
+     * @param dirtyCount        有未入库修改的数量
+     * @param evictionQueueSize 淘汰后等待入库的数量
+     * @param dbErrorCount      数据库操作失败次数
+     * @param select            数据库查询耗时
+     * @param update            数据库入库耗时
+     */
+    public record RepositoryDescriptor(long hitCount, long missCount, int dirtyCount, int evictionQueueSize, long dbErrorCount,
+                                       LatencyDescriptor select, LatencyDescriptor update,
+                                       CacheStats cache, ColdTierStats coldTier, MissingIdStats missingId, DumpStats dump) {
+
+        static RepositoryDescriptor of(Repository<?, ?> repository) {
+            var metrics = repository.metrics();
+            return new RepositoryDescriptor(metrics.hitCount(), metrics.missCount(), metrics.dirtyCount(), metrics.evictionQueueSize(),
+                    metrics.dbErrorCount(), LatencyDescriptor.of(metrics.selectLatency()), LatencyDescriptor.of(metrics.updateLatency()),
+                    repository.cacheStats(), repository.coldTierStats(), repository.missingIdStats(), repository.dumpStats());
+        }
+    }
+
+    /**
+     * 耗时单位均为ns
+     */
+    public record LatencyDescriptor(long count, long meanNanos, long p50Nanos, long p99Nanos, long p999Nanos) {
+
+        static LatencyDescriptor of(LatencyRecorder recorder) {
+            var count = recorder.count();
+            return new LatencyDescriptor(count, count == 0 ? 0 : recorder.totalNanos() / count,
+                    recorder.percentile(0.5), recorder.percentile(0.99), recorder.percentile(0.999));
+        }
+    }
+}
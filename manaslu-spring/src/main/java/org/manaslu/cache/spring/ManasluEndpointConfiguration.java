@@ -0,0 +1,22 @@
+package org.manaslu.cache.spring;
+
+import org.manaslu.cache.core.RepositoryFactory;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 存在actuator时提供 /actuator/manaslu 端点
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(Endpoint.class)
+@AutoConfiguration
+public class ManasluEndpointConfiguration {
+
+    @Bean
+    ManasluEndpoint manasluEndpoint(RepositoryFactory repositoryFactory) {
+        return new ManasluEndpoint(repositoryFactory);
+    }
+}
@@ -0,0 +1,109 @@
+package org.manaslu.cache.spring;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.manaslu.cache.core.LatencyRecorder;
+import org.manaslu.cache.core.MetricsListener;
+import org.manaslu.cache.core.Repository;
+import org.manaslu.cache.core.RepositoryFactory;
+import org.manaslu.cache.core.RepositoryMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将存储类指标注册到Micrometer，按实体类型打标签，之后创建的存储类也会注册
+ */
+public class ManasluMeterBinder implements MeterBinder {
+
+    private final RepositoryFactory repositoryFactory;
+
+    public ManasluMeterBinder(RepositoryFactory repositoryFactory) {
+        this.repositoryFactory = repositoryFactory;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        repositoryFactory.addMetricsListener(new RegistryListener(registry));
+    }
+
+    private record RegistryListener(MeterRegistry registry) implements MetricsListener {
+
+        @Override
+        public void onRepositoryCreated(Class<?> entityType, Repository<?, ?> repository) {
+            var tags = Tags.of("entity", entityType.getSimpleName());
+            var metrics = repository.metrics();
+            FunctionCounter.builder("manaslu.cache.gets", metrics, RepositoryMetrics::hitCount)
+                    .tags(tags).tag("result", "hit")
+                    .description("缓存命中次数")
+                    .register(registry);
+            FunctionCounter.builder("manaslu.cache.gets", metrics, RepositoryMetrics::missCount)
+                    .tags(tags).tag("result", "miss")
+                    .description("缓存未命中次数")
+                    .register(registry);
+            FunctionCounter.builder("manaslu.cache.evictions", repository, r -> r.cacheStats().evictionCount())
+                    .tags(tags)
+                    .description("缓存淘汰次数")
+                    .register(registry);
+            Gauge.builder("manaslu.cache.size", repository, r -> r.cacheStats().size())
+                    .tags(tags)
+                    .description("缓存数量")
+                    .register(registry);
+            Gauge.builder("manaslu.dump.dirty", metrics, RepositoryMetrics::dirtyCount)
+                    .tags(tags)
+                    .description("有未入库修改的数量")
+                    .register(registry);
+            Gauge.builder("manaslu.eviction.queue", metrics, RepositoryMetrics::evictionQueueSize)
+                    .tags(tags)
+                    .description("淘汰后等待入库的数量")
+                    .register(registry);
+            FunctionCounter.builder("manaslu.dump.runs", repository, r -> r.dumpStats().runCount())
+                    .tags(tags)
+                    .description("延迟入库执行次数")
+                    .register(registry);
+            FunctionCounter.builder("manaslu.dump.flushed", repository, r -> r.dumpStats().flushedCount())
+                    .tags(tags)
+                    .description("延迟入库累计数量")
+                    .register(registry);
+            FunctionCounter.builder("manaslu.dump.suppressed", repository, r -> r.dumpStats().suppressedEntityCount())
+                    .tags(tags)
+                    .description("值没有变化未写入数据库的实体数量")
+                    .register(registry);
+            FunctionCounter.builder("manaslu.dump.suppressed.fields", repository, r -> r.dumpStats().suppressedFieldCount())
+                    .tags(tags)
+                    .description("值没有变化未写入数据库的字段数量")
+                    .register(registry);
+            FunctionCounter.builder("manaslu.dump.snapshot.retries", repository, r -> r.dumpStats().snapshotRetryCount())
+                    .tags(tags)
+                    .description("入库快照复制期间实体被修改的次数")
+                    .register(registry);
+            TimeGauge.builder("manaslu.dump.last.duration", repository, TimeUnit.NANOSECONDS, r -> r.dumpStats().lastRunNanos())
+                    .tags(tags)
+                    .description("最近一次延迟入库耗时")
+                    .register(registry);
+            FunctionCounter.builder("manaslu.db.errors", metrics, RepositoryMetrics::dbErrorCount)
+                    .tags(tags)
+                    .description("数据库操作失败次数")
+                    .register(registry);
+            latency(registry, "manaslu.db.select", "数据库查询耗时", metrics.selectLatency(), tags);
+            latency(registry, "manaslu.db.update", "数据库入库耗时", metrics.updateLatency(), tags);
+        }
+
+        private static void latency(MeterRegistry registry, String name, String description, LatencyRecorder recorder, Tags tags) {
+            FunctionTimer.builder(name, recorder, LatencyRecorder::count, LatencyRecorder::totalNanos, TimeUnit.NANOSECONDS)
+                    .tags(tags)
+                    .description(description)
+                    .register(registry);
+            for (var phi : new double[]{0.5, 0.99}) {
+                TimeGauge.builder(name + ".percentile", recorder, TimeUnit.NANOSECONDS, r -> r.percentile(phi))
+                        .tags(tags).tag("phi", String.valueOf(phi))
+                        .description(description + "分位数")
+                        .register(registry);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.manaslu.cache.spring;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.manaslu.cache.core.RepositoryFactory;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 存在Micrometer时注册存储类指标
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(MeterRegistry.class)
+@AutoConfiguration
+public class ManasluMetricsConfiguration {
+
+    @Bean
+    ManasluMeterBinder manasluMeterBinder(RepositoryFactory repositoryFactory) {
+        return new ManasluMeterBinder(repositoryFactory);
+    }
+}
@@ -21,9 +21,30 @@ public class ManasluProperties {
      */
     private MongoProperties mongo = new MongoProperties();
 
+    /**
+     * 预热配置
+     */
+    private WarmUpProperties warmUp = new WarmUpProperties();
+
     @Data
     public static class MongoProperties {
         private String url;
         private String database;
     }
+
+    @Data
+    public static class WarmUpProperties {
+        /**
+         * 是否预热
+         */
+        private boolean enabled = true;
+        /**
+         * 每个类型预热的并行数
+         */
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        /**
+         * 预热完成前应用不进入就绪状态
+         */
+        private boolean blockReadiness = true;
+    }
 }